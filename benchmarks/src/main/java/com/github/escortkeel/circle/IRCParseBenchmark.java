@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class measures framing and parsing received lines, without handling
+ * them. Results are per line.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IRCParseBenchmark {
+
+    @Param({"privmsg", "names", "netsplit"})
+    public String traffic;
+    private byte[] recording;
+    private IRCTraffic.Receiver receiver;
+    private int params;
+
+    @Setup
+    public void setUp() {
+        recording = IRCTraffic.get(traffic);
+
+        IRCCodec codec = new IRCCodec(new IRCKeyTable());
+        final IRCMessage message = new IRCMessage(codec, new IRCUserCache(codec, 512));
+        final IRCLineFramer framer = new IRCLineFramer(8191 + 512);
+        final IRCLineFramer.Handler handler = new IRCLineFramer.Handler() {
+            @Override
+            public void line(byte[] buf, int off, int len) {
+                if (message.parse(buf, off, len)) {
+                    params += message.getParamCount();
+                }
+            }
+        };
+        receiver = new IRCTraffic.Receiver() {
+            @Override
+            public void receive(byte[] buf, int off, int len) {
+                framer.buffer().put(buf, off, len);
+                framer.frame(handler);
+            }
+        };
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(IRCTraffic.LINES)
+    public int parse() {
+        params = 0;
+        IRCTraffic.replay(recording, receiver);
+        return params;
+    }
+}
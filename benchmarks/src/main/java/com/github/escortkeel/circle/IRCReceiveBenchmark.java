@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import com.github.escortkeel.circle.event.IRCChannelJoinEvent;
+import com.github.escortkeel.circle.event.IRCChannelPartEvent;
+import com.github.escortkeel.circle.event.IRCNumericEvent;
+import com.github.escortkeel.circle.event.IRCPrivateMessageEvent;
+import com.github.escortkeel.circle.event.IRCRawMessageEvent;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class measures the whole receive path of an
+ * <code>IRCClient</code>: framing, parsing, handling each message and
+ * dispatching its events to the listeners. Results are per line.
+ *
+ * The listeners are either absent, an adapter handling the usual events, or
+ * an adapter which also handles every raw message.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IRCReceiveBenchmark {
+
+    @Param({"privmsg", "names", "netsplit"})
+    public String traffic;
+    @Param({"none", "events", "raw"})
+    public String listeners;
+    private byte[] recording;
+    private IRCClient client;
+    private IRCTraffic.Receiver receiver;
+    private Counter counter;
+
+    @Setup
+    public void setUp() throws IOException {
+        recording = IRCTraffic.get(traffic);
+
+        switch (listeners) {
+            case "none":
+                counter = new Counter();
+                break;
+            case "events":
+                counter = new EventCounter();
+                break;
+            case "raw":
+                counter = new RawCounter();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown listeners: " + listeners);
+        }
+
+        client = new IRCClient(IRCTraffic.SELF, counter);
+        receiver = new IRCTraffic.Receiver() {
+            @Override
+            public void receive(byte[] buf, int off, int len) {
+                client.receive(buf, off, len);
+            }
+        };
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(IRCTraffic.LINES)
+    public int receive() {
+        counter.events = 0;
+        IRCTraffic.replay(recording, receiver);
+        return counter.events;
+    }
+
+    /**
+     * This class counts nothing, so that no events are built.
+     */
+    public static class Counter extends IRCAdapter {
+
+        int events;
+    }
+
+    /**
+     * This class counts the events most clients handle.
+     */
+    public static class EventCounter extends Counter {
+
+        @Override
+        public void onPrivateMessage(IRCPrivateMessageEvent event) {
+            events += event.getMessage().length();
+        }
+
+        @Override
+        public void onChannelJoin(IRCChannelJoinEvent event) {
+            events++;
+        }
+
+        @Override
+        public void onChannelPart(IRCChannelPartEvent event) {
+            events++;
+        }
+
+        @Override
+        public void onNumeric(IRCNumericEvent event) {
+            events += event.getCode();
+        }
+    }
+
+    /**
+     * This class also counts every raw message.
+     */
+    public static class RawCounter extends EventCounter {
+
+        @Override
+        public void onRawMessage(IRCRawMessageEvent event) {
+            events++;
+        }
+    }
+}
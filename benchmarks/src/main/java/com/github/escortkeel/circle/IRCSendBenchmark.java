@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class measures building and encoding the lines of a message flood
+ * sent by a client, as they are written to the socket. The encoding of lines
+ * by concatenation, as was done before lines were encoded into pooled
+ * buffers, is measured alongside for comparison. Results are per line.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IRCSendBenchmark {
+
+    /**
+     * The size of the buffers lines are encoded into, as used by the client.
+     */
+    private static final int SLAB_SIZE = 64 * (IRCLine.MAX_LENGTH + 2);
+    @Param({"UTF-8", "ISO-8859-1"})
+    public String charsetName;
+    @Param({"true", "false"})
+    public boolean direct;
+    private Charset charset;
+    private String[] targets;
+    private String[] texts;
+    private IRCBufferPool pool;
+    private final IRCLineEncoder encoder = new IRCLineEncoder();
+
+    @Setup
+    public void setUp() {
+        charset = Charset.forName(charsetName);
+        targets = IRCTraffic.targets();
+        texts = IRCTraffic.texts();
+        pool = direct ? IRCBufferPool.DIRECT : IRCBufferPool.HEAP;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(IRCTraffic.LINES)
+    public int encode() {
+        int bytes = 0;
+        ByteBuffer slab = pool.acquire(SLAB_SIZE);
+        for (int i = 0; i < IRCTraffic.LINES; i++) {
+            IRCLine line = new IRCLine(charset, null, "PRIVMSG ", targets[i], " :", texts[i]);
+            if (slab.remaining() < line.size()) {
+                bytes += slab.position();
+                slab.clear();
+            }
+            encoder.encode(line, slab);
+        }
+        bytes += slab.position();
+        pool.release(slab);
+        return bytes;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(IRCTraffic.LINES)
+    public int concatenate() {
+        int bytes = 0;
+        for (int i = 0; i < IRCTraffic.LINES; i++) {
+            String raw = "PRIVMSG " + targets[i] + " :" + texts[i];
+            ByteBuffer buffer = ByteBuffer.wrap((raw + "\r\n").getBytes(charset));
+            bytes += buffer.remaining();
+        }
+        return bytes;
+    }
+}
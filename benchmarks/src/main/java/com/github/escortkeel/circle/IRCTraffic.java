@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.nio.charset.Charset;
+import java.util.Random;
+
+/**
+ * This class produces the traffic replayed by the benchmarks, modelled on
+ * traffic recorded from busy networks. Every recording has the same number
+ * of lines, so that results can be reported per message.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+final class IRCTraffic {
+
+    /**
+     * The number of lines in every recording.
+     */
+    static final int LINES = 2000;
+    /**
+     * The nickname of the client the traffic is sent to.
+     */
+    static final String SELF = "bench";
+    /**
+     * The number of bytes delivered by each read, the payload of a typical
+     * TCP segment.
+     */
+    static final int SEGMENT = 1460;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String[] WORDS = {
+        "the", "build", "is", "green", "again", "anyone", "seen", "the", "new",
+        "release", "notes", "lol", "brb", "ping", "ok", "thanks", "merged", "into",
+        "master", "can", "you", "review", "my", "patch", "later", "today", "déjà",
+        "vu", "naïve", "über", "日本語", "👍"
+    };
+    private static final String[] HOSTS = {
+        "user/%s", "%s.example.com", "gateway/web/irccloud.com/x-%s",
+        "2001:db8::%x", "unaffiliated/%s", "ip-10-0-%d-%d.ec2.internal"
+    };
+
+    private IRCTraffic() {
+    }
+
+    /**
+     * This interface is implemented by receivers of replayed traffic.
+     */
+    interface Receiver {
+
+        void receive(byte[] buf, int off, int len);
+    }
+
+    /**
+     * Returns the recording of the specified name, one of <tt>privmsg</tt>,
+     * <tt>names</tt> and <tt>netsplit</tt>.
+     */
+    static byte[] get(String name) {
+        switch (name) {
+            case "privmsg":
+                return privmsgFlood();
+            case "names":
+                return namesBurst();
+            case "netsplit":
+                return netsplit();
+            default:
+                throw new IllegalArgumentException("Unknown traffic: " + name);
+        }
+    }
+
+    /**
+     * Returns a flood of messages to a few busy channels and to the client,
+     * about half of them carrying the tags sent by modern servers.
+     */
+    static byte[] privmsgFlood() {
+        Random random = new Random(1);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < LINES; i++) {
+            int user = random.nextInt(300);
+            if (random.nextBoolean()) {
+                sb.append("@time=2024-03-0").append(1 + random.nextInt(9))
+                        .append("T12:").append(10 + random.nextInt(50)).append(':').append(10 + random.nextInt(50))
+                        .append('.').append(100 + random.nextInt(900)).append("Z;msgid=")
+                        .append(Long.toString(random.nextLong() & Long.MAX_VALUE, 36))
+                        .append(";account=").append(nick(user)).append(' ');
+            }
+            sb.append(':').append(mask(user)).append(" PRIVMSG ");
+            sb.append(random.nextInt(10) == 0 ? SELF : "#channel" + random.nextInt(4));
+            sb.append(" :").append(text(random)).append("\r\n");
+        }
+        return sb.toString().getBytes(UTF_8);
+    }
+
+    /**
+     * Returns the targets of the messages sent by the client, one per line.
+     */
+    static String[] targets() {
+        Random random = new Random(2);
+        String[] targets = new String[LINES];
+        for (int i = 0; i < LINES; i++) {
+            targets[i] = random.nextInt(10) == 0 ? nick(random.nextInt(300)) : "#channel" + random.nextInt(4);
+        }
+        return targets;
+    }
+
+    /**
+     * Returns the text of the messages sent by the client, one per line.
+     */
+    static String[] texts() {
+        Random random = new Random(2);
+        String[] texts = new String[LINES];
+        for (int i = 0; i < LINES; i++) {
+            texts[i] = text(random);
+        }
+        return texts;
+    }
+
+    /**
+     * Feeds the specified recording to the specified receiver a segment at a
+     * time, as it would arrive from a socket.
+     */
+    static void replay(byte[] recording, Receiver receiver) {
+        for (int off = 0; off < recording.length; off += SEGMENT) {
+            receiver.receive(recording, off, Math.min(SEGMENT, recording.length - off));
+        }
+    }
+
+    /**
+     * Returns the client joining a large channel, the burst of names which
+     * follows, and the client leaving it again.
+     */
+    static byte[] namesBurst() {
+        StringBuilder sb = new StringBuilder();
+        join(sb, "#large", LINES - 3);
+        sb.append(":").append(SELF).append("!~").append(SELF).append("@bench.example PART #large\r\n");
+        return sb.toString().getBytes(UTF_8);
+    }
+
+    /**
+     * Returns the client joining a channel, whose members then quit in a
+     * netsplit, along with a few users from other channels, and the client
+     * leaving it again.
+     */
+    static byte[] netsplit() {
+        // JOIN, ten names per line, 366, a QUIT per name and PART.
+        int namesLines = (LINES - 3) / 11;
+        int quits = LINES - 3 - namesLines;
+
+        StringBuilder sb = new StringBuilder();
+        join(sb, "#split", namesLines);
+        for (int i = 0; i < quits; i++) {
+            sb.append(':').append(mask(i)).append(" QUIT :*.net *.split\r\n");
+        }
+        sb.append(":").append(SELF).append("!~").append(SELF).append("@bench.example PART #split\r\n");
+        return sb.toString().getBytes(UTF_8);
+    }
+
+    /**
+     * Appends the client joining the specified channel, followed by the
+     * specified number of lines of names, ten to a line, and the end of the
+     * names.
+     */
+    private static void join(StringBuilder sb, String channel, int namesLines) {
+        sb.append(':').append(SELF).append("!~").append(SELF).append("@bench.example JOIN ").append(channel).append("\r\n");
+        int user = 0;
+        for (int i = 0; i < namesLines; i++) {
+            sb.append(":irc.example.net 353 ").append(SELF).append(" = ").append(channel).append(" :");
+            if (i == 0) {
+                sb.append('@').append(SELF).append(' ');
+            }
+            for (int j = 0; j < 10; j++, user++) {
+                if (j > 0) {
+                    sb.append(' ');
+                }
+                if (user % 50 == 0) {
+                    sb.append('@');
+                } else if (user % 7 == 0) {
+                    sb.append('+');
+                }
+                sb.append(nick(user));
+            }
+            sb.append("\r\n");
+        }
+        sb.append(":irc.example.net 366 ").append(SELF).append(' ').append(channel).append(" :End of /NAMES list.\r\n");
+    }
+
+    private static String text(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int words = 1 + random.nextInt(random.nextInt(10) == 0 ? 60 : 12);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+
+    private static String nick(int user) {
+        return (user % 3 == 0 ? "Guest" : user % 3 == 1 ? "dev_" : "n") + user;
+    }
+
+    private static String mask(int user) {
+        String host = HOSTS[user % HOSTS.length];
+        if (host.startsWith("ip-")) {
+            host = String.format(host, user / 256 % 256, user % 256);
+        } else if (host.startsWith("2001")) {
+            host = String.format(host, user);
+        } else {
+            host = String.format(host, nick(user).toLowerCase());
+        }
+        return nick(user) + "!~u" + user + "@" + host;
+    }
+}
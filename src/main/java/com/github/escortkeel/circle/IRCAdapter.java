@@ -26,17 +26,21 @@
 package com.github.escortkeel.circle;
 
 import com.github.escortkeel.circle.event.IRCNicknameInvalidEvent;
+import com.github.escortkeel.circle.event.IRCBatchEvent;
 import com.github.escortkeel.circle.event.IRCChannelJoinEvent;
 import com.github.escortkeel.circle.event.IRCChannelPartEvent;
 import com.github.escortkeel.circle.event.IRCConnectionClosedEvent;
 import com.github.escortkeel.circle.event.IRCConnectionEstablishedEvent;
+import com.github.escortkeel.circle.event.IRCConnectionLostEvent;
 import com.github.escortkeel.circle.event.IRCErrorEvent;
 import com.github.escortkeel.circle.event.IRCMotdEvent;
 import com.github.escortkeel.circle.event.IRCNicknameChangeEvent;
 import com.github.escortkeel.circle.event.IRCNicknameInUseEvent;
+import com.github.escortkeel.circle.event.IRCNumericEvent;
 import com.github.escortkeel.circle.event.IRCPrivateMessageEvent;
 import com.github.escortkeel.circle.event.IRCRawMessageEvent;
 import com.github.escortkeel.circle.event.IRCWelcomeEvent;
+import com.github.escortkeel.circle.event.IRCWritabilityChangedEvent;
 
 /**
  * This class represents the logic of an IRC client or "bot". Override methods
@@ -64,6 +68,26 @@ public class IRCAdapter {
     public void onConnectionClosed(IRCConnectionClosedEvent event) {
     }
 
+    /**
+     * This method is invoked by an
+     * <code>IRCClient</code> instance when its connection fails and it is
+     * about to reconnect.
+     *
+     * @param event the <code>IRCConnectionLostEvent</code>
+     */
+    public void onConnectionLost(IRCConnectionLostEvent event) {
+    }
+
+    /**
+     * This method is invoked by an
+     * <code>IRCClient</code> instance when the bytes waiting to be written
+     * rise above its high watermark, or fall back to its low watermark.
+     *
+     * @param event the <code>IRCWritabilityChangedEvent</code>
+     */
+    public void onWritabilityChanged(IRCWritabilityChangedEvent event) {
+    }
+
     /**
      * This method is invoked by an
      * <code>IRCClient</code> instance when a welcome message is received.
@@ -147,6 +171,25 @@ public class IRCAdapter {
     public void onRawMessage(IRCRawMessageEvent event) {
     }
 
+    /**
+     * This method is invoked by an
+     * <code>IRCClient</code> instance when a numeric reply is received.
+     *
+     * @param event the <code>IRCNumericEvent</code>
+     */
+    public void onNumeric(IRCNumericEvent event) {
+    }
+
+    /**
+     * This method is invoked by an
+     * <code>IRCClient</code> instance when a batch of messages has been
+     * received.
+     *
+     * @param event the <code>IRCBatchEvent</code>
+     */
+    public void onBatch(IRCBatchEvent event) {
+    }
+
     /**
      * This method is invoked by an
      * <code>IRCClient</code> instance when a private message is received.
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import com.github.escortkeel.circle.event.IRCBatchEvent;
+import com.github.escortkeel.circle.event.IRCChannelJoinEvent;
+import com.github.escortkeel.circle.event.IRCChannelPartEvent;
+import com.github.escortkeel.circle.event.IRCConnectionClosedEvent;
+import com.github.escortkeel.circle.event.IRCConnectionEstablishedEvent;
+import com.github.escortkeel.circle.event.IRCConnectionLostEvent;
+import com.github.escortkeel.circle.event.IRCErrorEvent;
+import com.github.escortkeel.circle.event.IRCMotdEvent;
+import com.github.escortkeel.circle.event.IRCNicknameChangeEvent;
+import com.github.escortkeel.circle.event.IRCNicknameInUseEvent;
+import com.github.escortkeel.circle.event.IRCNicknameInvalidEvent;
+import com.github.escortkeel.circle.event.IRCNumericEvent;
+import com.github.escortkeel.circle.event.IRCPrivateMessageEvent;
+import com.github.escortkeel.circle.event.IRCRawMessageEvent;
+import com.github.escortkeel.circle.event.IRCWelcomeEvent;
+import com.github.escortkeel.circle.event.IRCWritabilityChangedEvent;
+import com.github.escortkeel.circle.event.IRCEvent;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * This class adapts the methods of an
+ * <code>IRCAdapter</code> to
+ * <code>IRCListener</code> instances, so that adapters are dispatched to
+ * through direct calls like any other listener.
+ *
+ * @param <E> the type of event handled by this listener.
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+abstract class IRCAdapterListener<E extends IRCEvent> implements IRCListener<E> {
+
+    /**
+     * Returns a listener for each event handled by the specified adapter,
+     * that is, for each method of
+     * <code>IRCAdapter</code> which the class of the adapter overrides.
+     */
+    static List<IRCAdapterListener<?>> forAdapter(final IRCAdapter adapter) {
+        List<IRCAdapterListener<?>> bridges = new ArrayList<>();
+        bridges.add(new IRCAdapterListener<IRCConnectionEstablishedEvent>(adapter, IRCConnectionEstablishedEvent.class, "onConnectionEstablished") {
+            @Override
+            public void onEvent(IRCConnectionEstablishedEvent event) {
+                adapter.onConnectionEstablished(event);
+            }
+        });
+        bridges.add(new IRCAdapterListener<IRCConnectionClosedEvent>(adapter, IRCConnectionClosedEvent.class, "onConnectionClosed") {
+            @Override
+            public void onEvent(IRCConnectionClosedEvent event) {
+                adapter.onConnectionClosed(event);
+            }
+        });
+        bridges.add(new IRCAdapterListener<IRCConnectionLostEvent>(adapter, IRCConnectionLostEvent.class, "onConnectionLost") {
+            @Override
+            public void onEvent(IRCConnectionLostEvent event) {
+                adapter.onConnectionLost(event);
+            }
+        });
+        bridges.add(new IRCAdapterListener<IRCWritabilityChangedEvent>(adapter, IRCWritabilityChangedEvent.class, "onWritabilityChanged") {
+            @Override
+            public void onEvent(IRCWritabilityChangedEvent event) {
+                adapter.onWritabilityChanged(event);
+            }
+        });
+        bridges.add(new IRCAdapterListener<IRCWelcomeEvent>(adapter, IRCWelcomeEvent.class, "onWelcome") {
+            @Override
+            public void onEvent(IRCWelcomeEvent event) {
+                adapter.onWelcome(event);
+            }
+        });
+        bridges.add(new IRCAdapterListener<IRCMotdEvent>(adapter, IRCMotdEvent.class, "onMotd") {
+            @Override
+            public void onEvent(IRCMotdEvent event) {
+                adapter.onMotd(event);
+            }
+        });
+        bridges.add(new IRCAdapterListener<IRCErrorEvent>(adapter, IRCErrorEvent.class, "onError") {
+            @Override
+            public void onEvent(IRCErrorEvent event) {
+                adapter.onError(event);
+            }
+        });
+        bridges.add(new IRCAdapterListener<IRCChannelJoinEvent>(adapter, IRCChannelJoinEvent.class, "onChannelJoin") {
+            @Override
+            public void onEvent(IRCChannelJoinEvent event) {
+                adapter.onChannelJoin(event);
+            }
+        });
+        bridges.add(new IRCAdapterListener<IRCChannelPartEvent>(adapter, IRCChannelPartEvent.class, "onChannelPart") {
+            @Override
+            public void onEvent(IRCChannelPartEvent event) {
+                adapter.onChannelPart(event);
+            }
+        });
+        bridges.add(new IRCAdapterListener<IRCNicknameChangeEvent>(adapter, IRCNicknameChangeEvent.class, "onNicknameChange") {
+            @Override
+            public void onEvent(IRCNicknameChangeEvent event) {
+                adapter.onNicknameChange(event);
+            }
+        });
+        bridges.add(new IRCAdapterListener<IRCNicknameInUseEvent>(adapter, IRCNicknameInUseEvent.class, "onNicknameInUse") {
+            @Override
+            public void onEvent(IRCNicknameInUseEvent event) {
+                adapter.onNicknameInUse(event);
+            }
+        });
+        bridges.add(new IRCAdapterListener<IRCNicknameInvalidEvent>(adapter, IRCNicknameInvalidEvent.class, "onNicknameInvalid") {
+            @Override
+            public void onEvent(IRCNicknameInvalidEvent event) {
+                adapter.onNicknameInvalid(event);
+            }
+        });
+        bridges.add(new IRCAdapterListener<IRCRawMessageEvent>(adapter, IRCRawMessageEvent.class, "onRawMessage") {
+            @Override
+            public void onEvent(IRCRawMessageEvent event) {
+                adapter.onRawMessage(event);
+            }
+        });
+        bridges.add(new IRCAdapterListener<IRCNumericEvent>(adapter, IRCNumericEvent.class, "onNumeric") {
+            @Override
+            public void onEvent(IRCNumericEvent event) {
+                adapter.onNumeric(event);
+            }
+        });
+        bridges.add(new IRCAdapterListener<IRCBatchEvent>(adapter, IRCBatchEvent.class, "onBatch") {
+            @Override
+            public void onEvent(IRCBatchEvent event) {
+                adapter.onBatch(event);
+            }
+        });
+        bridges.add(new IRCAdapterListener<IRCPrivateMessageEvent>(adapter, IRCPrivateMessageEvent.class, "onPrivateMessage") {
+            @Override
+            public void onEvent(IRCPrivateMessageEvent event) {
+                adapter.onPrivateMessage(event);
+            }
+        });
+
+        Iterator<IRCAdapterListener<?>> it = bridges.iterator();
+        while (it.hasNext()) {
+            if (!it.next().isOverriddenBy(adapter.getClass())) {
+                it.remove();
+            }
+        }
+        return bridges;
+    }
+    private final Class<E> type;
+    private final String method;
+
+    private IRCAdapterListener(IRCAdapter adapter, Class<E> type, String method) {
+        this.type = type;
+        this.method = method;
+    }
+
+    /**
+     * Returns the type of event handled by this listener.
+     */
+    Class<E> getType() {
+        return type;
+    }
+
+    /**
+     * Returns whether the specified adapter class overrides the method this
+     * listener invokes. Methods which are not overridden do nothing, so their
+     * events need not be dispatched to the adapter.
+     */
+    private boolean isOverriddenBy(Class<? extends IRCAdapter> adapterClass) {
+        try {
+            return adapterClass.getMethod(method, type).getDeclaringClass() != IRCAdapter.class;
+        } catch (NoSuchMethodException ex) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class keeps released buffers for reuse, so that connections which
+ * come and go do not each allocate their own. Buffers are pooled by capacity,
+ * and at most a fixed number of each capacity are kept.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+final class IRCBufferPool {
+
+    /**
+     * The pool of direct buffers, which are read from and written to sockets.
+     */
+    static final IRCBufferPool DIRECT = new IRCBufferPool(true, 64);
+    /**
+     * The pool of heap buffers.
+     */
+    static final IRCBufferPool HEAP = new IRCBufferPool(false, 64);
+    private final boolean direct;
+    private final int maxPooled;
+    private final ConcurrentMap<Integer, Pool> pools = new ConcurrentHashMap<>();
+
+    IRCBufferPool(boolean direct, int maxPooled) {
+        this.direct = direct;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * Returns a cleared buffer of the specified capacity.
+     */
+    ByteBuffer acquire(int capacity) {
+        ByteBuffer buffer = pool(capacity).buffers.poll();
+        if (buffer == null) {
+            return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        }
+
+        pool(capacity).size.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns the specified buffer to the pool. The caller must not use it
+     * again.
+     */
+    void release(ByteBuffer buffer) {
+        if (buffer.isDirect() != direct) {
+            return;
+        }
+
+        Pool pool = pool(buffer.capacity());
+        if (pool.size.incrementAndGet() > maxPooled) {
+            pool.size.decrementAndGet();
+            return;
+        }
+        pool.buffers.add(buffer);
+    }
+
+    /**
+     * Returns the number of buffers of the specified capacity held by the
+     * pool.
+     */
+    int getPooledCount(int capacity) {
+        return pool(capacity).size.get();
+    }
+
+    private Pool pool(int capacity) {
+        Pool pool = pools.get(capacity);
+        if (pool == null) {
+            Pool created = new Pool();
+            pool = pools.putIfAbsent(capacity, created);
+            if (pool == null) {
+                pool = created;
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * This class holds the pooled buffers of one capacity.
+     */
+    private static final class Pool {
+
+        private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+/**
+ * This class holds a snapshot of the statistics of a cache kept by an
+ * <code>IRCClient</code>.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+public final class IRCCacheStats {
+
+    private final long hits;
+    private final long misses;
+    private final int size;
+    private final int capacity;
+
+    IRCCacheStats(long hits, long misses, int size, int capacity) {
+        this.hits = hits;
+        this.misses = misses;
+        this.size = size;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the number of lookups which were answered by the cache.
+     *
+     * @return the number of hits.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups which were not answered by the cache.
+     *
+     * @return the number of misses.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the fraction of lookups which were answered by the cache, or 0
+     * if there have been none.
+     *
+     * @return the hit rate.
+     */
+    public double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Returns the number of entries in the cache.
+     *
+     * @return the number of entries.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the maximum number of entries in the cache.
+     *
+     * @return the capacity.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + hits + ", misses=" + misses + ", size=" + size + "/" + capacity;
+    }
+}
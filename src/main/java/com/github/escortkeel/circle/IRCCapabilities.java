@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class negotiates the IRCv3 capabilities of an
+ * <code>IRCClient</code>. The client lists the capabilities of the server
+ * with <tt>CAP LS 302</tt> before registering, requests those of them it
+ * wants, and ends negotiation once the server has acknowledged or rejected
+ * its requests. Capabilities the server adds or removes later, through
+ * <tt>cap-notify</tt>, are requested or forgotten as they come and go.
+ *
+ * If SASL <tt>EXTERNAL</tt> authentication is wanted and the server
+ * acknowledges <tt>sasl</tt>, negotiation is only ended once authentication
+ * has succeeded or failed.
+ *
+ * Negotiation is driven by the thread reading from the connection; the
+ * wanted and enabled capabilities may be read and changed from any thread.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+final class IRCCapabilities {
+
+    private final Set<String> wanted = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Set<String> enabled = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Map<String, String> available = new HashMap<>();
+    private final StringBuilder listing = new StringBuilder();
+    private boolean negotiating = false;
+    private int pending = 0;
+    private volatile boolean external = false;
+    private boolean authenticating = false;
+
+    IRCCapabilities() {
+        wanted.add("batch");
+        wanted.add("message-tags");
+        wanted.add("server-time");
+    }
+
+    Set<String> getWanted() {
+        return wanted;
+    }
+
+    Set<String> getEnabled() {
+        return enabled;
+    }
+
+    boolean isSaslExternal() {
+        return external;
+    }
+
+    void setSaslExternal(boolean external) {
+        this.external = external;
+        if (external) {
+            wanted.add("sasl");
+        } else {
+            wanted.remove("sasl");
+        }
+    }
+
+    /**
+     * Handles an <tt>AUTHENTICATE</tt> message, returning the line to send in
+     * reply, or <tt>null</tt> if there is none. <tt>EXTERNAL</tt> takes its
+     * identity from the client certificate, so its response is empty.
+     */
+    String authenticate(String challenge) {
+        if (authenticating && "+".equals(challenge)) {
+            return "AUTHENTICATE +";
+        }
+        return null;
+    }
+
+    /**
+     * Records that authentication has ended, successfully or not, returning
+     * the line which ends negotiation, or <tt>null</tt> if there is none.
+     */
+    String authenticated() {
+        if (!authenticating) {
+            return null;
+        }
+
+        authenticating = false;
+        return end();
+    }
+
+    /**
+     * Returns the value the server advertised for the specified capability,
+     * which is empty if it advertised none, or <tt>null</tt> if the server
+     * does not support it.
+     */
+    String getValue(String capability) {
+        return available.get(capability);
+    }
+
+    /**
+     * Forgets the state of any previous connection, and returns the line
+     * which begins negotiation.
+     */
+    String begin() {
+        available.clear();
+        enabled.clear();
+        listing.setLength(0);
+        negotiating = true;
+        pending = 0;
+        authenticating = false;
+        return "CAP LS 302";
+    }
+
+    /**
+     * Records that registration has completed, whether or not the server
+     * took part in negotiation.
+     */
+    void registered() {
+        negotiating = false;
+        authenticating = false;
+    }
+
+    /**
+     * Handles a <tt>CAP</tt> message, returning the line to send in reply, or
+     * <tt>null</tt> if there is none.
+     *
+     * @param subcommand the subcommand of the message.
+     * @param more whether the server will continue the listing in another
+     * message.
+     * @param capabilities the capabilities in the message.
+     */
+    String handle(String subcommand, boolean more, String capabilities) {
+        switch (subcommand) {
+            case "LS": {
+                if (listing.length() > 0) {
+                    listing.append(' ');
+                }
+                listing.append(capabilities);
+                if (more) {
+                    return null;
+                }
+
+                for (String capability : split(listing.toString())) {
+                    int equals = capability.indexOf('=');
+                    if (equals == -1) {
+                        available.put(capability, "");
+                    } else {
+                        available.put(capability.substring(0, equals), capability.substring(equals + 1));
+                    }
+                }
+                listing.setLength(0);
+
+                String request = request(available.keySet());
+                return request != null ? request : end();
+            }
+            case "ACK": {
+                for (String capability : split(capabilities)) {
+                    if (capability.startsWith("-")) {
+                        enabled.remove(capability.substring(1));
+                    } else {
+                        enabled.add(capability);
+                    }
+                }
+                return answered(more);
+            }
+            case "NAK": {
+                return answered(more);
+            }
+            case "NEW": {
+                Set<String> added = new HashSet<>();
+                for (String capability : split(capabilities)) {
+                    int equals = capability.indexOf('=');
+                    String name = equals == -1 ? capability : capability.substring(0, equals);
+                    available.put(name, equals == -1 ? "" : capability.substring(equals + 1));
+                    added.add(name);
+                }
+                return request(added);
+            }
+            case "DEL": {
+                for (String capability : split(capabilities)) {
+                    available.remove(capability);
+                    enabled.remove(capability);
+                }
+                return null;
+            }
+            default: {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Returns a request for the wanted capabilities among those specified
+     * which are not yet enabled, or <tt>null</tt> if there are none.
+     */
+    private String request(Set<String> offered) {
+        StringBuilder sb = new StringBuilder("CAP REQ :");
+        int length = sb.length();
+        for (String capability : offered) {
+            if (wanted.contains(capability) && !enabled.contains(capability)) {
+                if (sb.length() > length) {
+                    sb.append(' ');
+                }
+                sb.append(capability);
+            }
+        }
+        if (sb.length() == length) {
+            return null;
+        }
+
+        pending++;
+        return sb.toString();
+    }
+
+    private String answered(boolean more) {
+        if (!more && pending > 0) {
+            pending--;
+        }
+        if (pending != 0) {
+            return null;
+        }
+
+        if (negotiating && external && !authenticating && enabled.contains("sasl")) {
+            authenticating = true;
+            return "AUTHENTICATE EXTERNAL";
+        }
+        return end();
+    }
+
+    private String end() {
+        if (!negotiating) {
+            return null;
+        }
+
+        negotiating = false;
+        return "CAP END";
+    }
+
+    private static String[] split(String capabilities) {
+        String trimmed = capabilities.trim();
+        return trimmed.isEmpty() ? new String[0] : trimmed.split(" +");
+    }
+}
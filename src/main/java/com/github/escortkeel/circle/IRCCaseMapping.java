@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+/**
+ * This enum represents the rule by which an IRC server considers two
+ * nicknames or channel names to be equal, as advertised by the
+ * <tt>CASEMAPPING</tt> token of <tt>RPL_ISUPPORT</tt>.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+public enum IRCCaseMapping {
+
+    /**
+     * Only the letters <tt>A</tt> to <tt>Z</tt> are folded to lower case.
+     */
+    ASCII("ascii", 'Z'),
+    /**
+     * The letters <tt>A</tt> to <tt>Z</tt> and the characters <tt>[]\~</tt>
+     * are folded to lower case, the latter to <tt>{}|^</tt>. This is the
+     * mapping described by RFC 1459, and the default.
+     */
+    RFC1459("rfc1459", '^'),
+    /**
+     * The letters <tt>A</tt> to <tt>Z</tt> and the characters <tt>[]\</tt>
+     * are folded to lower case, the latter to <tt>{}|</tt>.
+     */
+    STRICT_RFC1459("strict-rfc1459", ']');
+    private final String name;
+    private final char last;
+
+    private IRCCaseMapping(String name, char last) {
+        this.name = name;
+        this.last = last;
+    }
+
+    /**
+     * Returns the name by which servers advertise this case mapping.
+     *
+     * @return the name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Folds the specified character to lower case.
+     *
+     * @param c the character.
+     * @return the folded character.
+     */
+    public char fold(char c) {
+        return c >= 'A' && c <= last ? (char) (c + 32) : c;
+    }
+
+    /**
+     * Folds the specified nickname or channel name to lower case. The string
+     * itself is returned if it is already folded.
+     *
+     * @param s the string.
+     * @return the folded string.
+     */
+    public String fold(String s) {
+        int length = s.length();
+        int i = 0;
+        while (i < length && fold(s.charAt(i)) == s.charAt(i)) {
+            i++;
+        }
+        if (i == length) {
+            return s;
+        }
+
+        char[] chars = s.toCharArray();
+        for (; i < length; i++) {
+            chars[i] = fold(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Returns the case mapping with the specified name, or <tt>null</tt> if
+     * no such case mapping is known.
+     *
+     * @param name the name advertised by the server.
+     * @return the case mapping, or <tt>null</tt>.
+     */
+    public static IRCCaseMapping forName(String name) {
+        for (IRCCaseMapping mapping : values()) {
+            if (mapping.name.equalsIgnoreCase(name)) {
+                return mapping;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class represents the state of a channel which an
+ * <code>IRCClient</code> is a member of. The state is kept up to date by the
+ * client as members join, leave, change nickname and change modes, and may
+ * be read from any thread.
+ *
+ * The modes of a member are represented by their prefix symbols (such as
+ * <tt>@</tt> for a channel operator and <tt>+</tt> for a voiced member), in
+ * order of decreasing rank.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+public final class IRCChannel {
+
+    private volatile IRCKey key;
+    private final IRCKeyTable keys;
+    private final Map<IRCKey, String> members = new ConcurrentHashMap<>();
+    private volatile int version = 0;
+    private volatile Snapshot snapshot;
+
+    IRCChannel(IRCKey key, IRCKeyTable keys) {
+        this.key = key;
+        this.keys = keys;
+    }
+
+    /**
+     * Returns the name of this channel.
+     *
+     * @return the name.
+     */
+    public String getName() {
+        return key.getName();
+    }
+
+    /**
+     * Returns the key of this channel.
+     *
+     * @return the key.
+     */
+    public IRCKey getKey() {
+        return key;
+    }
+
+    /**
+     * Returns whether the specified nickname is a member of this channel,
+     * under the case mapping of the server.
+     *
+     * @param nickname the nickname.
+     * @return true if the nickname is a member.
+     */
+    public boolean contains(String nickname) {
+        return members.containsKey(keys.lookup(nickname));
+    }
+
+    /**
+     * Returns the prefix symbols of the modes of the specified member, or
+     * <tt>null</tt> if the nickname is not a member of this channel.
+     *
+     * @param nickname the nickname.
+     * @return the prefix symbols, which are empty for an ordinary member.
+     */
+    public String getModes(String nickname) {
+        return members.get(keys.lookup(nickname));
+    }
+
+    /**
+     * Returns the number of members of this channel.
+     *
+     * @return the number of members.
+     */
+    public int getMemberCount() {
+        return members.size();
+    }
+
+    /**
+     * Returns an immutable snapshot of the members of this channel, mapping
+     * each nickname to the prefix symbols of its modes. Snapshots are shared
+     * until the membership of the channel next changes.
+     *
+     * @return the members of this channel.
+     */
+    public Map<String, String> getMembers() {
+        Snapshot current = snapshot;
+        int v = version;
+        if (current == null || current.version != v) {
+            Map<String, String> copy = new HashMap<>();
+            for (Map.Entry<IRCKey, String> member : members.entrySet()) {
+                copy.put(member.getKey().getName(), member.getValue());
+            }
+            current = new Snapshot(v, Collections.unmodifiableMap(copy));
+            snapshot = current;
+        }
+        return current.members;
+    }
+
+    @Override
+    public String toString() {
+        return key.getName();
+    }
+
+    String getModes(IRCKey nickname) {
+        return members.get(nickname);
+    }
+
+    void put(IRCKey nickname, String modes) {
+        members.put(nickname, modes);
+        version++;
+    }
+
+    boolean remove(IRCKey nickname) {
+        if (members.remove(nickname) == null) {
+            return false;
+        }
+
+        version++;
+        return true;
+    }
+
+    boolean rename(IRCKey from, IRCKey to) {
+        String modes = members.remove(from);
+        if (modes == null) {
+            return false;
+        }
+
+        members.put(to, modes);
+        version++;
+        return true;
+    }
+
+    /**
+     * Recreates the keys of this channel and its members, after the case
+     * mapping has changed.
+     */
+    void rekey() {
+        key = keys.key(key.getName());
+        Map<IRCKey, String> names = new HashMap<>();
+        for (Map.Entry<IRCKey, String> member : members.entrySet()) {
+            names.put(keys.key(member.getKey().getName()), member.getValue());
+        }
+        members.clear();
+        members.putAll(names);
+        version++;
+    }
+
+    void replace(Map<IRCKey, String> names) {
+        members.putAll(names);
+        members.keySet().retainAll(names.keySet());
+        version++;
+    }
+
+    /**
+     * This class holds a snapshot of the members of a channel, together with
+     * the version of the membership it was taken at.
+     */
+    private static final class Snapshot {
+
+        private final int version;
+        private final Map<String, String> members;
+
+        Snapshot(int version, Map<String, String> members) {
+            this.version = version;
+            this.members = members;
+        }
+    }
+}
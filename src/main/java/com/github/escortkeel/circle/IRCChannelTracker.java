@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class tracks the channels an
+ * <code>IRCClient</code> is a member of, and their members. It is updated by
+ * the thread reading from the connection, while the channels it holds may be
+ * read from any thread, and it may be cleared from any thread when the
+ * connection is closed or lost.
+ *
+ * Replies to <tt>NAMES</tt> are parsed as each <tt>RPL_NAMREPLY</tt> line
+ * arrives into a pending member list, which replaces the members of the
+ * channel when <tt>RPL_ENDOFNAMES</tt> arrives.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+final class IRCChannelTracker {
+
+    private final IRCKeyTable keys;
+    private final Map<IRCKey, IRCChannel> channels = new ConcurrentHashMap<>();
+    private final Map<IRCKey, Map<IRCKey, String>> pendingNames = new ConcurrentHashMap<>();
+    /**
+     * The number of names in the pending member lists, which may be read by
+     * any thread. A list being filled while it is cleared may leave it
+     * slightly off, which only affects the sizing of the key table.
+     */
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private String prefixModes = "ov";
+    private String prefixSymbols = "@+";
+    private String channelTypes = "#&+!";
+    private String paramModes = "beIk";
+    private String setParamModes = "l";
+
+    IRCChannelTracker(IRCKeyTable keys) {
+        this.keys = keys;
+        keys.setUsage(new IRCKeyTable.Usage() {
+            @Override
+            public int getNameCount() {
+                int count = Math.max(0, pendingCount.get());
+                for (IRCChannel c : channels.values()) {
+                    count += 1 + c.getMemberCount();
+                }
+                return count;
+            }
+        });
+    }
+
+    /**
+     * Returns the specified channel, or <tt>null</tt> if the client is not a
+     * member of it.
+     */
+    IRCChannel get(String channel) {
+        return channels.get(keys.lookup(channel));
+    }
+
+    IRCChannel get(IRCKey channel) {
+        return channels.get(channel);
+    }
+
+    /**
+     * Returns the names of the channels the client is a member of.
+     */
+    List<String> getNames() {
+        List<String> names = new ArrayList<>();
+        for (IRCChannel channel : channels.values()) {
+            names.add(channel.getName());
+        }
+        return names;
+    }
+
+    /**
+     * Returns whether the specified name is a channel name.
+     */
+    boolean isChannel(String name) {
+        return !name.isEmpty() && channelTypes.indexOf(name.charAt(0)) != -1;
+    }
+
+    /**
+     * Applies the <tt>PREFIX</tt>, <tt>CHANTYPES</tt>, <tt>CHANMODES</tt> and
+     * <tt>CASEMAPPING</tt> tokens of an <tt>RPL_ISUPPORT</tt> line.
+     */
+    void isupport(String token) {
+        if (token.startsWith("CASEMAPPING=")) {
+            IRCCaseMapping mapping = IRCCaseMapping.forName(token.substring(12));
+            if (mapping != null && mapping != keys.getCaseMapping()) {
+                keys.setCaseMapping(mapping);
+                rekey();
+            }
+        } else if (token.startsWith("PREFIX=")) {
+            String value = token.substring(7);
+            int close = value.indexOf(')');
+            if (value.startsWith("(") && close != -1 && value.length() - close - 1 == close - 1) {
+                prefixModes = value.substring(1, close);
+                prefixSymbols = value.substring(close + 1);
+            } else if (value.isEmpty()) {
+                prefixModes = "";
+                prefixSymbols = "";
+            }
+        } else if (token.startsWith("CHANTYPES=")) {
+            channelTypes = token.substring(10);
+        } else if (token.startsWith("CHANMODES=")) {
+            String[] types = token.substring(10).split(",", -1);
+            if (types.length >= 3) {
+                paramModes = types[0] + types[1];
+                setParamModes = types[2];
+            }
+        }
+    }
+
+    /**
+     * Records that the client joined the specified channel.
+     */
+    void selfJoin(String channel) {
+        IRCKey key = keys.key(channel);
+        if (!channels.containsKey(key)) {
+            channels.put(key, new IRCChannel(key, keys));
+        }
+    }
+
+    /**
+     * Records that the client left the specified channel.
+     */
+    void selfPart(String channel) {
+        IRCKey key = keys.key(channel);
+        channels.remove(key);
+        forgetNames(key);
+    }
+
+    void join(String channel, String nickname) {
+        IRCChannel c = channels.get(keys.key(channel));
+        if (c != null) {
+            c.put(keys.key(nickname), "");
+        }
+    }
+
+    void part(String channel, String nickname) {
+        IRCChannel c = channels.get(keys.key(channel));
+        if (c != null) {
+            c.remove(keys.key(nickname));
+        }
+    }
+
+    void quit(String nickname) {
+        IRCKey key = keys.key(nickname);
+        for (IRCChannel c : channels.values()) {
+            c.remove(key);
+        }
+    }
+
+    void nick(String from, String to) {
+        IRCKey fromKey = keys.key(from);
+        IRCKey toKey = keys.key(to);
+        for (IRCChannel c : channels.values()) {
+            c.rename(fromKey, toKey);
+        }
+    }
+
+    /**
+     * Applies the prefix modes among the specified channel mode changes.
+     *
+     * @param channel the channel.
+     * @param message the <tt>MODE</tt> message, whose parameters following
+     * the channel are the mode changes.
+     */
+    void mode(String channel, IRCMessage message) {
+        IRCChannel c = channels.get(keys.key(channel));
+        String changes = message.getParam(1);
+        if (c == null || changes == null) {
+            return;
+        }
+
+        boolean adding = true;
+        int arg = 2;
+        for (int i = 0; i < changes.length(); i++) {
+            char mode = changes.charAt(i);
+            if (mode == '+' || mode == '-') {
+                adding = mode == '+';
+                continue;
+            }
+
+            int rank = prefixModes.indexOf(mode);
+            if (rank != -1) {
+                String name = message.getParam(arg++);
+                IRCKey nickname = name == null ? null : keys.key(name);
+                String modes = nickname == null ? null : c.getModes(nickname);
+                if (modes != null) {
+                    c.put(nickname, adding ? addSymbol(modes, rank) : removeSymbol(modes, rank));
+                }
+            } else if (paramModes.indexOf(mode) != -1 || (adding && setParamModes.indexOf(mode) != -1)) {
+                arg++;
+            }
+        }
+    }
+
+    /**
+     * Parses the names in an <tt>RPL_NAMREPLY</tt> line into the pending
+     * member list of the specified channel.
+     */
+    void names(String channel, String names) {
+        IRCKey key = keys.key(channel);
+        if (!channels.containsKey(key)) {
+            return;
+        }
+
+        Map<IRCKey, String> pending = pendingNames.get(key);
+        if (pending == null) {
+            pending = new HashMap<>();
+            pendingNames.put(key, pending);
+        }
+
+        int before = pending.size();
+        int length = names.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && names.charAt(i) == ' ') {
+                i++;
+            }
+
+            int start = i;
+            while (i < length && prefixSymbols.indexOf(names.charAt(i)) != -1) {
+                i++;
+            }
+            int nickStart = i;
+            while (i < length && names.charAt(i) != ' ' && names.charAt(i) != '!') {
+                i++;
+            }
+            int nickEnd = i;
+            while (i < length && names.charAt(i) != ' ') {
+                i++;
+            }
+
+            if (nickEnd > nickStart) {
+                String symbols = nickStart == start ? "" : sortSymbols(names.substring(start, nickStart));
+                pending.put(keys.key(names.substring(nickStart, nickEnd)), symbols);
+            }
+        }
+        pendingCount.addAndGet(pending.size() - before);
+    }
+
+    /**
+     * Replaces the members of the specified channel with its pending member
+     * list.
+     */
+    void endOfNames(String channel) {
+        IRCKey key = keys.key(channel);
+        Map<IRCKey, String> pending = forgetNames(key);
+        IRCChannel c = channels.get(key);
+        if (pending != null && c != null) {
+            c.replace(pending);
+        }
+    }
+
+    /**
+     * Forgets every channel. Any thread may call this method.
+     */
+    void clear() {
+        channels.clear();
+        pendingNames.clear();
+        pendingCount.set(0);
+    }
+
+    /**
+     * Recreates every key after the case mapping has changed.
+     */
+    private void rekey() {
+        pendingNames.clear();
+        pendingCount.set(0);
+        List<IRCChannel> current = new ArrayList<>(channels.values());
+        channels.clear();
+        for (IRCChannel c : current) {
+            c.rekey();
+            channels.put(c.getKey(), c);
+        }
+    }
+
+    /**
+     * Removes the pending member list of the specified channel.
+     */
+    private Map<IRCKey, String> forgetNames(IRCKey channel) {
+        Map<IRCKey, String> pending = pendingNames.remove(channel);
+        if (pending != null) {
+            pendingCount.addAndGet(-pending.size());
+        }
+        return pending;
+    }
+
+    private String addSymbol(String modes, int rank) {
+        char symbol = prefixSymbols.charAt(rank);
+        if (modes.indexOf(symbol) != -1) {
+            return modes;
+        }
+        return sortSymbols(modes + symbol);
+    }
+
+    private String removeSymbol(String modes, int rank) {
+        int index = modes.indexOf(prefixSymbols.charAt(rank));
+        if (index == -1) {
+            return modes;
+        }
+        return modes.substring(0, index) + modes.substring(index + 1);
+    }
+
+    private String sortSymbols(String symbols) {
+        if (symbols.length() < 2) {
+            return symbols;
+        }
+
+        StringBuilder sb = new StringBuilder(symbols.length());
+        for (int i = 0; i < prefixSymbols.length(); i++) {
+            if (symbols.indexOf(prefixSymbols.charAt(i)) != -1) {
+                sb.append(prefixSymbols.charAt(i));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -25,7 +25,9 @@
  */
 package com.github.escortkeel.circle;
 
+import com.github.escortkeel.circle.event.IRCBatchEvent;
 import com.github.escortkeel.circle.event.IRCConnectionEstablishedEvent;
+import com.github.escortkeel.circle.event.IRCConnectionLostEvent;
 import com.github.escortkeel.circle.event.IRCWelcomeEvent;
 import com.github.escortkeel.circle.event.IRCConnectionClosedEvent;
 import com.github.escortkeel.circle.event.IRCErrorEvent;
@@ -35,29 +37,52 @@ import com.github.escortkeel.circle.event.IRCEvent;
 import com.github.escortkeel.circle.event.IRCMotdEvent;
 import com.github.escortkeel.circle.event.IRCNicknameChangeEvent;
 import com.github.escortkeel.circle.event.IRCNicknameInUseEvent;
+import com.github.escortkeel.circle.event.IRCNicknameInvalidEvent;
+import com.github.escortkeel.circle.event.IRCNumericEvent;
 import com.github.escortkeel.circle.event.IRCPrivateMessageEvent;
 import com.github.escortkeel.circle.event.IRCRawMessageEvent;
+import com.github.escortkeel.circle.event.IRCWritabilityChangedEvent;
 import java.io.Closeable;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousChannelGroup;
 import java.nio.channels.AsynchronousSocketChannel;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.CompletionHandler;
+import java.nio.charset.Charset;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
 
 /**
  * This class implements an IRC client connection to an IRC server.
@@ -66,24 +91,101 @@ import java.util.logging.Logger;
  */
 public class IRCClient implements Closeable {
 
+    /**
+     * The longest line accepted from the server: 8191 bytes of tags, and 512
+     * bytes of message.
+     */
+    private static final int MAX_INBOUND_LENGTH = 8191 + 512;
     private static final SecureRandom random = new SecureRandom();
+    private final IRCClientManager manager;
     private final AsynchronousChannelGroup group;
-    private final AsynchronousSocketChannel socket;
-    private final String nickname;
+    private final ExecutorService executor;
+    private volatile AsynchronousSocketChannel socket;
+    private volatile IRCTransport transport;
+    private volatile boolean secure = false;
+    private volatile SSLContext sslContext;
+    private final Map<SocketOption<?>, Object> options = new LinkedHashMap<>();
+    private final List<InetSocketAddress> servers = new CopyOnWriteArrayList<>();
+    private volatile IRCReconnectPolicy reconnectPolicy = IRCReconnectPolicy.NEVER;
+    private volatile boolean quitting = false;
+    private final Object reconnection = new Object();
+    private AsynchronousSocketChannel lost;
+    private int attempts = 0;
+    private int server = 0;
+    private Set<IRCKey> rejoin = Collections.emptySet();
+    private final Runnable reconnect = new Runnable() {
+        @Override
+        public void run() {
+            reconnect();
+        }
+    };
+    private volatile String nickname;
     private final String password;
     private final String username;
     private final String realname;
     private final boolean invisible;
-    private final IRCAdapter adapter;
-    private final ByteBuffer buff = ByteBuffer.allocateDirect(512);
-    private final Queue<ByteBuffer> outQueue = new LinkedBlockingQueue<>();
-    private final ArrayList<String> channels = new ArrayList<>();
+    private final IRCListenerRegistry listeners = new IRCListenerRegistry();
+    private final IRCLineFramer framer = new IRCLineFramer(MAX_INBOUND_LENGTH);
+    private final IRCKeyTable keys = new IRCKeyTable();
+    private final IRCCodec codec = new IRCCodec(keys);
+    private final IRCUserCache users = new IRCUserCache(codec, 512);
+    private final IRCMessage message = new IRCMessage(codec, users);
+    private final IRCLineFramer.Handler lineHandler = new IRCLineFramer.Handler() {
+        @Override
+        public void line(byte[] buf, int off, int len) {
+            if (message.parse(buf, off, len)) {
+                handleMessage(message);
+            }
+        }
+    };
+    private final IRCOutboundQueue outbound = new IRCOutboundQueue(new IRCOutboundOptimizer.Membership() {
+        @Override
+        public boolean isJoinedOrJoining(IRCKey channel) {
+            return tracker.get(channel) != null || joining.contains(channel);
+        }
+
+        @Override
+        public void joining(IRCKey channel) {
+            joining.add(channel);
+        }
+    }, codec, keys);
+    private final AtomicBoolean writing = new AtomicBoolean();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Runnable scheduledFlush = new Runnable() {
+        @Override
+        public void run() {
+            flushScheduled.set(false);
+            flush();
+        }
+    };
+    private final IRCLine[] drained = new IRCLine[64];
+    /**
+     * The size of the buffers the drained lines are encoded into, which hold
+     * a full array of the longest lines.
+     */
+    private final int slabSize = drained.length * (IRCLine.MAX_LENGTH + 2);
+    private final ByteBuffer[] gather = new ByteBuffer[1];
+    private final IRCLineEncoder encoder = new IRCLineEncoder();
+    private volatile boolean directBuffers = true;
+    private final Queue<IRCLine> deferred = new ConcurrentLinkedQueue<>();
+    private final Object writability = new Object();
+    private final IRCPendingReplies<IRCChannel> pendingJoins = new IRCPendingReplies<>(keys);
+    private final IRCPendingReplies<Void> pendingParts = new IRCPendingReplies<>(keys);
+    private final IRCPendingReplies<String> pendingNicks = new IRCPendingReplies<>(keys);
+    private volatile long commandTimeout = TimeUnit.SECONDS.toNanos(30);
+    private final IRCQueries queries = new IRCQueries(keys);
+    private final IRCChannelTracker tracker = new IRCChannelTracker(keys);
+    private final Set<IRCKey> joining = Collections.newSetFromMap(new ConcurrentHashMap<IRCKey, Boolean>());
     private final StringBuilder motd = new StringBuilder();
-    private String part = "";
-    private volatile boolean welcomed = false;
+    private final IRCCapabilities capabilities = new IRCCapabilities();
+    private final Map<String, Batch> batches = new HashMap<>();
+    private boolean quiet = false;
+    private volatile IRCDispatcher dispatcher;
+    private Object dispatchKey;
     private volatile boolean connected = false;
-    private volatile boolean asynchWriting = false;
-    private final ArrayList<String> welcomeWaiters = new ArrayList<>();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final CountDownLatch closeLatch = new CountDownLatch(1);
+    private volatile int prefixLength = 0;
 
     /**
      * Constructs a new
@@ -122,6 +224,19 @@ public class IRCClient implements Closeable {
      * connection.
      */
     public IRCClient(String nickname, String username, String realname, boolean invisible, IRCAdapter adapter) throws IOException {
+        this(nickname, username, realname, invisible, adapter, null);
+    }
+
+    /**
+     * Constructs a new
+     * <code>IRCClient</code> which performs its I/O using the threads of the
+     * specified
+     * <code>IRCClientManager</code>, or using a dedicated thread if the
+     * manager is <tt>null</tt>.
+     *
+     * @see IRCClientManager#createClient
+     */
+    IRCClient(String nickname, String username, String realname, boolean invisible, IRCAdapter adapter, IRCClientManager manager) throws IOException {
         Objects.requireNonNull(nickname);
         Objects.requireNonNull(username);
         Objects.requireNonNull(realname);
@@ -139,7 +254,14 @@ public class IRCClient implements Closeable {
             throw new IllegalArgumentException("Nickname must be no more than 16 characters");
         }
 
-        this.group = AsynchronousChannelGroup.withThreadPool(Executors.newFixedThreadPool(1));
+        this.manager = manager;
+        if (manager == null) {
+            this.executor = Executors.newFixedThreadPool(1);
+            this.group = AsynchronousChannelGroup.withThreadPool(executor);
+        } else {
+            this.executor = manager.getExecutor();
+            this.group = manager.getGroup();
+        }
         this.socket = AsynchronousSocketChannel.open(group);
 
         this.nickname = nickname;
@@ -148,7 +270,7 @@ public class IRCClient implements Closeable {
         this.realname = realname;
         this.invisible = invisible;
 
-        this.adapter = adapter;
+        listeners.addAdapter(adapter);
     }
 
     /**
@@ -188,29 +310,168 @@ public class IRCClient implements Closeable {
      *
      */
     public void connect(String address, int port) throws IOException {
-        queueWrite("PASS " + password);
-        queueWrite("USER " + username + " " + (invisible ? "8" : "0") + " * :" + realname);
-        queueWrite("NICK " + nickname);
+        InetSocketAddress first = address(address, port);
+        servers.add(0, first);
 
-        final IRCClient me = this;
-        socket.connect(new InetSocketAddress(address, port), this, new CompletionHandler<Void, IRCClient>() {
-            @Override
-            public void completed(Void result, IRCClient attachment) {
-                synchronized (outQueue) {
-                    connected = true;
+        batches.clear();
+        outbound.addAll(registration(), IRCPriority.HIGH);
+        updateWritability();
 
-                    fire(new IRCConnectionEstablishedEvent(me));
-                }
+        open(socket, first);
+    }
 
-                readLoop();
-                writeLoop();
-            }
+    /**
+     * Connects this
+     * <code>IRCClient</code> to port 6697 (the default IRC port for TLS) of
+     * the specified host, over TLS.
+     *
+     * @param address the host name, or <code>null</code> for the loopback
+     * address.
+     * @throws IOException
+     * @see #connectSecurely(java.lang.String, int)
+     */
+    public void connectSecurely(String address) throws IOException {
+        connectSecurely(address, 6697);
+    }
 
-            @Override
-            public void failed(Throwable exc, IRCClient attachment) {
-                fire(new IRCConnectionClosedEvent(me));
+    /**
+     * Connects this
+     * <code>IRCClient</code> to the specified port of the specified host, over
+     * TLS. The server's certificate is checked against the trust material of
+     * the client's
+     * <code>SSLContext</code>, and its name against the host name given here.
+     * The servers added with
+     * <code>addServer()</code> are connected to over TLS as well.
+     *
+     * Sessions are cached by the
+     * <code>SSLContext</code> for each host and port, so reconnecting to a
+     * server resumes the previous session rather than repeating the full
+     * handshake.
+     *
+     * @param address the host name, or <code>null</code> for the loopback
+     * address.
+     * @param port the port number.
+     * @throws IOException if an I/O error occurs
+     * @see #setSSLContext
+     */
+    public void connectSecurely(String address, int port) throws IOException {
+        secure = true;
+        connect(address, port);
+    }
+
+    /**
+     * Sets the
+     * <code>SSLContext</code> which secures the connections of this
+     * <code>IRCClient</code> made by
+     * <code>connectSecurely()</code>. A context holding a client certificate
+     * may be used together with
+     * <code>setSaslExternal()</code>. By default the JVM's default context is
+     * used.
+     *
+     * @param context the SSL context.
+     */
+    public void setSSLContext(SSLContext context) {
+        this.sslContext = Objects.requireNonNull(context);
+    }
+
+    /**
+     * Returns the
+     * <code>SSLContext</code> which secures the connections of this
+     * <code>IRCClient</code>.
+     *
+     * @return the SSL context.
+     * @throws IllegalStateException if no context was set and the default
+     * context is unavailable
+     */
+    public SSLContext getSSLContext() {
+        SSLContext context = sslContext;
+        if (context == null) {
+            try {
+                context = SSLContext.getDefault();
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
             }
-        });
+            sslContext = context;
+        }
+        return context;
+    }
+
+    /**
+     * Returns whether this
+     * <code>IRCClient</code> connects over TLS.
+     *
+     * @return whether this client connects over TLS.
+     */
+    public boolean isSecure() {
+        return secure;
+    }
+
+    /**
+     * Sets whether this
+     * <code>IRCClient</code> authenticates using SASL <tt>EXTERNAL</tt> while
+     * registering, which identifies it by the certificate it presented during
+     * the TLS handshake. Authentication is only attempted if the server
+     * offers the <tt>sasl</tt> capability; its outcome is reported by numeric
+     * events. This must be set before connecting.
+     *
+     * @param external whether to authenticate using SASL <tt>EXTERNAL</tt>.
+     */
+    public void setSaslExternal(boolean external) {
+        capabilities.setSaslExternal(external);
+    }
+
+    /**
+     * Returns whether this
+     * <code>IRCClient</code> authenticates using SASL <tt>EXTERNAL</tt>.
+     *
+     * @return whether SASL <tt>EXTERNAL</tt> is used.
+     */
+    public boolean isSaslExternal() {
+        return capabilities.isSaslExternal();
+    }
+
+    /**
+     * Adds a server to those this
+     * <code>IRCClient</code> reconnects to. When the connection is lost, the
+     * client tries the servers in turn, starting with the one after the
+     * server it was connected to; the server passed to
+     * <code>connect()</code> comes first.
+     *
+     * @param address the host name, or <code>null</code> for the loopback
+     * address.
+     * @param port the port number.
+     * @see #setReconnectPolicy
+     */
+    public void addServer(String address, int port) {
+        servers.add(address(address, port));
+    }
+
+    /**
+     * Sets when this
+     * <code>IRCClient</code> reconnects after its connection is lost. On
+     * reconnecting, the client registers again, rejoins the channels it was
+     * in, and then sends the lines queued while it was disconnected. By
+     * default
+     * <code>IRCReconnectPolicy.NEVER</code> is used, so the client is closed
+     * when its connection is lost.
+     *
+     * @param policy the reconnect policy.
+     * @see IRCReconnectPolicy#DEFAULT
+     */
+    public void setReconnectPolicy(IRCReconnectPolicy policy) {
+        Objects.requireNonNull(policy);
+
+        reconnectPolicy = policy;
+    }
+
+    /**
+     * Returns when this
+     * <code>IRCClient</code> reconnects after its connection is lost.
+     *
+     * @return the reconnect policy.
+     */
+    public IRCReconnectPolicy getReconnectPolicy() {
+        return reconnectPolicy;
     }
 
     /**
@@ -219,7 +480,34 @@ public class IRCClient implements Closeable {
      * @param channel the channel to join.
      */
     public void join(String channel) {
-        sendMessage("JOIN " + channel);
+        send(IRCPriority.NORMAL, "JOIN ", channel);
+    }
+
+    /**
+     * Attempts to join the specified channel, returning a future which
+     * completes with the channel once the server has sent its members, or
+     * fails with an
+     * <code>IRCCommandException</code> if the server refuses the join. If this
+     * <code>IRCClient</code> is already in the channel, the future completes
+     * immediately.
+     *
+     * @param channel the channel to join.
+     * @return the future of the join.
+     *
+     * @throws IllegalArgumentException if the channel contains a space or a
+     * comma
+     * @see #setCommandTimeout
+     */
+    public IRCFuture<IRCChannel> joinAsync(String channel) {
+        checkTarget(channel);
+
+        IRCChannel joined = getChannel(channel);
+        if (joined != null) {
+            IRCFuture<IRCChannel> future = new IRCFuture<>();
+            future.complete(joined);
+            return future;
+        }
+        return command(pendingJoins, keys.key(channel), "JOIN " + channel, IRCPriority.NORMAL);
     }
 
     /**
@@ -228,21 +516,180 @@ public class IRCClient implements Closeable {
      * @param channel the channel to leave.
      */
     public void part(String channel) {
-        sendMessage("PART " + channel);
+        send(IRCPriority.NORMAL, "PART ", channel);
+    }
+
+    /**
+     * Attempts to leave the specified channel, returning a future which
+     * completes once the server confirms the part, or fails with an
+     * <code>IRCCommandException</code> if the server refuses it.
+     *
+     * @param channel the channel to leave.
+     * @return the future of the part.
+     *
+     * @throws IllegalArgumentException if the channel contains a space or a
+     * comma
+     * @see #setCommandTimeout
+     */
+    public IRCFuture<Void> partAsync(String channel) {
+        checkTarget(channel);
+
+        return command(pendingParts, keys.key(channel), "PART " + channel, IRCPriority.NORMAL);
     }
 
     /**
-     * Sends a private message to the specified target.
+     * Sends a private message to the specified target. Messages which would
+     * exceed the maximum length of a line are split into several messages,
+     * preferably between words, as are messages containing line breaks. The
+     * parts are queued together, so they are not interleaved with other
+     * messages.
      *
      * @param target the target of the message.
      * @param message the message.
      */
     public void privmsg(String target, String message) {
+        privmsg(target, message, null);
+    }
+
+    /**
+     * Sends a private message to the specified target, as by
+     * <code>privmsg()</code>, returning a future which completes once every
+     * part of the message has been written to the socket. Servers do not
+     * acknowledge messages, so this is the closest thing to delivery that can
+     * be observed.
+     *
+     * @param target the target of the message.
+     * @param message the message.
+     * @return the future of the write.
+     */
+    public IRCFuture<Void> privmsgAsync(String target, String message) {
+        IRCFuture<Void> future = new IRCFuture<>();
+        if (closed.get()) {
+            future.fail(new ClosedChannelException());
+        } else {
+            privmsg(target, message, future);
+        }
+        return future;
+    }
+
+    private void privmsg(String target, String message, IRCFuture<Void> future) {
         if (target.contains(" ")) {
             throw new IllegalArgumentException("Target must not contain spaces");
         }
 
-        sendMessage("PRIVMSG " + target + " :" + message);
+        Charset charset = codec.charsetFor(target);
+        // "PRIVMSG " target " :"
+        int maxBytes = IRCLine.MAX_LENGTH - getPrefixLength() - (8 + IRCLine.length(target, charset) + 2);
+        List<String> chunks = IRCTextSplitter.split(message, maxBytes, charset);
+
+        List<IRCLine> lines = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            // Lines are written in order, so the last one completes the
+            // future.
+            lines.add(new IRCLine(charset, i == chunks.size() - 1 ? future : null, "PRIVMSG ", target, " :", chunks.get(i)));
+        }
+        outbound.addAll(lines, IRCPriority.LOW);
+        updateWritability();
+        flush();
+    }
+
+    /**
+     * Queues the specified raw line to be sent, unless this
+     * <code>IRCClient</code> is not writable. Unlike the other methods which
+     * send lines, this method never lets the lines waiting to be written grow
+     * beyond the high watermark.
+     *
+     * @param line the line, without the trailing line break.
+     * @return true if the line was queued.
+     *
+     * @throws IllegalArgumentException if the line contains a line break, or
+     * is longer than 510 bytes
+     * @see #setWriteBufferWatermarks
+     */
+    public boolean trySend(String line) {
+        IRCLine checked = checkLine(line, null);
+        if (closed.get() || !mayQueue()) {
+            return false;
+        }
+
+        outbound.add(checked, IRCPriority.LOW);
+        updateWritability();
+        flush();
+        return true;
+    }
+
+    /**
+     * Queues the specified raw line to be sent, waiting up to the specified
+     * time for this
+     * <code>IRCClient</code> to become writable.
+     *
+     * @param line the line, without the trailing line break.
+     * @param timeout the maximum time to wait.
+     * @param unit the unit of the timeout.
+     * @return true if the line was queued, or false if the client was closed
+     * or did not become writable in time.
+     *
+     * @throws IllegalArgumentException if the line contains a line break, or
+     * is longer than 510 bytes
+     * @throws InterruptedException if the waiting thread is interrupted.
+     */
+    public boolean send(String line, long timeout, TimeUnit unit) throws InterruptedException {
+        IRCLine checked = checkLine(line, null);
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (writability) {
+            while (!closed.get() && !mayQueue()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(writability, remaining);
+            }
+        }
+        if (closed.get()) {
+            return false;
+        }
+
+        outbound.add(checked, IRCPriority.LOW);
+        updateWritability();
+        flush();
+        return true;
+    }
+
+    /**
+     * Sends the specified raw line once this
+     * <code>IRCClient</code> is writable. The returned future completes when
+     * the line has been written to the socket, or fails if the client is
+     * closed first.
+     *
+     * @param line the line, without the trailing line break.
+     * @return the future of the write.
+     *
+     * @throws IllegalArgumentException if the line contains a line break, or
+     * is longer than 510 bytes
+     */
+    public IRCFuture<Void> sendAsync(String line) {
+        IRCFuture<Void> future = new IRCFuture<>();
+        IRCLine checked = checkLine(line, future);
+        if (closed.get()) {
+            future.fail(new ClosedChannelException());
+            return future;
+        }
+
+        if (mayQueue()) {
+            outbound.add(checked, IRCPriority.LOW);
+        } else {
+            deferred.add(checked);
+            if (outbound.isWritable()) {
+                // The queue drained while the line was being deferred.
+                acceptDeferred();
+            }
+        }
+        if (closed.get()) {
+            failDeferred();
+        }
+        updateWritability();
+        flush();
+        return future;
     }
 
     /**
@@ -259,226 +706,986 @@ public class IRCClient implements Closeable {
             throw new IllegalArgumentException("Nickname must be no more than 16 characters");
         }
 
-        sendMessage("NICK " + nickname);
+        send(IRCPriority.HIGH, "NICK ", nickname);
     }
 
     /**
-     * Closes this
-     * <code>IRCClient</code> gracefully. If the connection is already closed
-     * then invoking this method has no effect.
+     * Attempts to change the nickname of this
+     * <code>IRCClient</code>, returning a future which completes with the new
+     * nickname once the server confirms the change, or fails with an
+     * <code>IRCCommandException</code> if the server refuses it.
+     *
+     * @param nickname the new nickname.
+     * @return the future of the change.
+     *
+     * @throws IllegalArgumentException is the nickname is longer than 16
+     * characters
+     * @see #setCommandTimeout
      */
-    public void quit() {
-        sendMessage("QUIT");
+    public IRCFuture<String> nickAsync(String nickname) {
+        if (nickname.length() > 16) {
+            throw new IllegalArgumentException("Nickname must be no more than 16 characters");
+        }
+        checkTarget(nickname);
+
+        return command(pendingNicks, keys.key(nickname), "NICK " + nickname, IRCPriority.HIGH);
     }
 
     /**
-     * Closes this
-     * <code>IRCClient</code> gracefully with the specified reason. If the
-     * connection is already closed then invoking this method has no effect.
+     * Queries the server for information about the specified user, returning
+     * a future which completes with the aggregated replies, or fails with an
+     * <code>IRCCommandException</code> if there is no such user.
      *
-     * @param reason the reason for closing the connection
+     * A query for a user which is already in flight is not sent again; the
+     * future of the earlier query is returned instead, so cancelling it
+     * cancels it for every caller. Results are cached until the query cache
+     * TTL elapses, or until the user changes nickname, quits, joins or leaves
+     * a channel, goes away or changes account.
+     *
+     * @param nickname the nickname of the user.
+     * @return the future of the query.
+     *
+     * @throws IllegalArgumentException if the nickname contains a space or a
+     * comma
+     * @see #setQueryCacheTtl
      */
-    public void quit(String reason) {
-        sendMessage("QUIT :" + reason);
+    public IRCFuture<IRCWhoisInfo> whois(String nickname) {
+        checkTarget(nickname);
+
+        IRCFuture<IRCWhoisInfo> fresh = new IRCFuture<>();
+        IRCFuture<IRCWhoisInfo> future = queries.whois(keys.key(nickname), fresh);
+        if (future == fresh) {
+            if (closed.get()) {
+                fresh.fail(new ClosedChannelException());
+            } else {
+                expire(fresh);
+                queue(fresh, "WHOIS " + nickname, IRCPriority.NORMAL);
+            }
+        }
+        return future;
     }
 
     /**
-     * Returns the address of the remote host which this
-     * <code>IRCClient</code> instance is connected to.
+     * Queries the server for the users matching the specified mask, usually
+     * a channel, returning a future which completes with the aggregated
+     * replies. Queries are shared and cached as by
+     * <code>whois()</code>; a cached result for a channel is also forgotten
+     * when anyone joins or leaves it.
      *
-     * @return the address of the remote host.
-     * @throws ClosedChannelException if the underlying channel has already been
-     * closed
+     * @param mask the mask.
+     * @return the future of the query.
+     *
+     * @throws IllegalArgumentException if the mask contains a space or a
+     * comma
+     * @see #setQueryCacheTtl
      */
-    public String getRemoteAddress() throws IOException, ClosedChannelException {
-        if (!connected) {
-            throw new IllegalStateException("Client not yet connected");
-        }
+    public IRCFuture<List<IRCWhoEntry>> who(String mask) {
+        checkTarget(mask);
 
-        return ((InetSocketAddress) socket.getRemoteAddress()).getHostName();
+        IRCKey key = keys.key(mask);
+        IRCFuture<List<IRCWhoEntry>> fresh = new IRCFuture<>();
+        IRCFuture<List<IRCWhoEntry>> future = queries.who(key, fresh);
+        if (future == fresh) {
+            if (closed.get()) {
+                fresh.fail(new ClosedChannelException());
+            } else {
+                expire(fresh);
+                // The replies are matched to queries in the order they were
+                // sent, so recording and queueing must not interleave.
+                synchronized (queries) {
+                    queries.whoSent(key);
+                    queue(fresh, "WHO " + mask, IRCPriority.NORMAL);
+                }
+            }
+        }
+        return future;
     }
 
     /**
-     * Returns the port on the port number which this
-     * <code>IRCClient</code> instance is connected via.
+     * Sets how long the results of
+     * <code>whois()</code> and
+     * <code>who()</code> are cached. A TTL of zero disables caching, though
+     * concurrent queries are still shared. By default results are cached for
+     * 60 seconds.
      *
-     * @return the port on the remote host, or -1.
-     * @throws ClosedChannelException if the underlying channel has already been
-     * closed
+     * @param ttl the TTL.
+     * @param unit the unit of the TTL.
      */
-    public int getRemotePort() throws IOException, ClosedChannelException {
-        if (!connected) {
-            throw new IllegalStateException("Client not yet connected");
+    public void setQueryCacheTtl(long ttl, TimeUnit unit) {
+        if (ttl < 0) {
+            throw new IllegalArgumentException("TTL must not be negative");
         }
 
-        return ((InetSocketAddress) socket.getRemoteAddress()).getPort();
+        queries.setTtl(unit.toNanos(ttl));
     }
 
     /**
-     * Returns the nickname associated with this
-     * <code>IRCClient</code> instance.
+     * Returns how long the results of queries are cached.
      *
-     * @return the nickname associated with this <code>IRCClient</code>
-     * instance.
+     * @param unit the unit to return the TTL in.
+     * @return the TTL.
      */
-    public String getNickname() {
-        return nickname;
+    public long getQueryCacheTtl(TimeUnit unit) {
+        return unit.convert(queries.getTtl(), TimeUnit.NANOSECONDS);
     }
 
     /**
-     * Returns the username associated with this
-     * <code>IRCClient</code> instance.
+     * Returns the statistics of the cache of query results of this
+     * <code>IRCClient</code>. Queries answered by a query already in flight
+     * count as hits.
      *
-     * @return the username associated with this <code>IRCClient</code>
-     * instance.
+     * @return the statistics.
      */
-    public String getUsername() {
-        return username;
+    public IRCCacheStats getQueryCacheStats() {
+        return queries.getStats();
     }
 
     /**
-     * Returns the "real name" associated with this
-     * <code>IRCClient</code> instance.
+     * Sets how long the futures returned by
+     * <code>joinAsync()</code>,
+     * <code>partAsync()</code>,
+     * <code>nickAsync()</code>,
+     * <code>whois()</code> and
+     * <code>who()</code> wait for a reply before failing with a
+     * <code>TimeoutException</code>. By default they wait 30 seconds.
      *
-     * @return the "real name" associated with this <code>IRCClient</code>
-     * instance.
+     * @param timeout the timeout.
+     * @param unit the unit of the timeout.
      */
-    public String getRealname() {
-        return realname;
+    public void setCommandTimeout(long timeout, TimeUnit unit) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("Timeout must be positive");
+        }
+
+        commandTimeout = unit.toNanos(timeout);
     }
 
     /**
-     * Returns the channels which this
-     * <code>IRCClient</code> is a member of.
-     *
-     * This list is free to be manipulated or changed by the caller.
+     * Returns how long the futures of commands wait for a reply.
      *
-     * @return a list of the channels which this <code>IRCClient</code> is a
-     * member of
+     * @param unit the unit to return the timeout in.
+     * @return the timeout.
      */
-    public List<String> getChannels() {
-        return (List<String>) channels.clone();
+    public long getCommandTimeout(TimeUnit unit) {
+        return unit.convert(commandTimeout, TimeUnit.NANOSECONDS);
     }
 
     /**
-     * Returns whether this
-     * <code>IRCClient</code> instance is invisible.
-     *
-     * @return whether this <code>IRCClient</code> instance is invisible.
+     * Closes this
+     * <code>IRCClient</code> gracefully, once the lines already queued have
+     * been sent. If the connection is already closed then invoking this method
+     * has no effect.
      */
-    public boolean isInvisible() {
-        return invisible;
+    public void quit() {
+        quitting = true;
+        send("QUIT", IRCPriority.HIGH);
     }
 
     /**
-     * Returns the closed state of the socket.
+     * Closes this
+     * <code>IRCClient</code> gracefully with the specified reason, once the
+     * lines already queued have been sent. If the connection is already closed
+     * then invoking this method has no effect.
      *
-     * @return true if the socket has been closed
-     * @see #close
+     * @param reason the reason for closing the connection
      */
-    public boolean isClosed() {
-        return !socket.isOpen();
+    public void quit(String reason) {
+        quitting = true;
+        send("QUIT :" + reason, IRCPriority.HIGH);
     }
 
     /**
-     * Waits until this
-     * <code>IRCClient</code> is closed.
+     * Registers the specified listener to be notified of events of the
+     * specified type, including subtypes of that type. A listener may be
+     * registered at any time, including from within another listener.
      *
-     * @throws InterruptedException if the waiting thread is interrupted.
+     * @param type the type of event to listen for.
+     * @param listener the listener.
      */
-    public void waitFor() throws InterruptedException {
-        group.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+    public <E extends IRCEvent> void addListener(Class<E> type, IRCListener<? super E> listener) {
+        Objects.requireNonNull(type);
+        Objects.requireNonNull(listener);
+
+        listeners.add(type, listener);
     }
 
     /**
-     * Waits until this
-     * <code>IRCClient</code> is closed, or until the specified number of
-     * milliseconds elapse.
-     *
-     * @param millis the maximum number of milliseconds to wait for
+     * Unregisters the specified listener from events of the specified type.
      *
-     * @throws InterruptedException if the waiting thread is interrupted.
+     * @param type the type of event the listener was registered for.
+     * @param listener the listener.
+     * @return true if the listener was registered.
      */
-    public void waitFor(int millis) throws InterruptedException {
-        group.awaitTermination(millis, TimeUnit.MILLISECONDS);
+    public <E extends IRCEvent> boolean removeListener(Class<E> type, IRCListener<? super E> listener) {
+        return listeners.remove(type, listener);
     }
 
     /**
-     * Closes the socket underlying this
-     * <code>IRCClient</code> abruptly. If the connection is already closed then
-     * invoking this method has no effect.
+     * Registers an additional
+     * <code>IRCAdapter</code> to be notified of the events of this
+     * <code>IRCClient</code>.
+     *
+     * @param adapter the adapter.
+     */
+    public void addAdapter(IRCAdapter adapter) {
+        Objects.requireNonNull(adapter);
+
+        listeners.addAdapter(adapter);
+    }
+
+    /**
+     * Unregisters the specified
+     * <code>IRCAdapter</code>, including the adapter this
+     * <code>IRCClient</code> was constructed with.
+     *
+     * @param adapter the adapter.
+     * @return true if the adapter was registered.
+     */
+    public boolean removeAdapter(IRCAdapter adapter) {
+        return listeners.removeAdapter(adapter);
+    }
+
+    /**
+     * Sets the flood control applied to the lines sent by this
+     * <code>IRCClient</code>. By default
+     * <code>IRCFloodControl.RFC1459</code> is used, which sends one line every
+     * two seconds after a burst of five;
+     * <code>IRCFloodControl.NONE</code> sends lines as fast as the connection
+     * allows.
+     *
+     * @param control the flood control.
+     * @see IRCFloodControl#NONE
+     */
+    public void setFloodControl(IRCFloodControl control) {
+        Objects.requireNonNull(control);
+
+        outbound.setFloodControl(control);
+        flush();
+    }
+
+    /**
+     * Returns the flood control applied to the lines sent by this
+     * <code>IRCClient</code>.
+     *
+     * @return the flood control.
+     */
+    public IRCFloodControl getFloodControl() {
+        return outbound.getFloodControl();
+    }
+
+    /**
+     * Sets the watermarks of the buffer of lines waiting to be written by this
+     * <code>IRCClient</code>. When more than the high watermark of bytes are
+     * waiting, the client becomes unwritable until no more than the low
+     * watermark are waiting. By default the watermarks are 32 and 64
+     * kilobytes.
+     *
+     * @param low the low watermark, in bytes.
+     * @param high the high watermark, in bytes.
+     *
+     * @throws IllegalArgumentException if the low watermark is negative or
+     * greater than the high watermark
+     * @see #isWritable
+     */
+    public void setWriteBufferWatermarks(int low, int high) {
+        if (low < 0 || low > high) {
+            throw new IllegalArgumentException("Watermarks must satisfy 0 <= low <= high");
+        }
+
+        outbound.setWatermarks(low, high);
+        updateWritability();
+    }
+
+    /**
+     * Returns the low watermark of the buffer of lines waiting to be written.
+     *
+     * @return the low watermark, in bytes.
+     */
+    public int getWriteBufferLowWatermark() {
+        return (int) outbound.getLowWatermark();
+    }
+
+    /**
+     * Returns the high watermark of the buffer of lines waiting to be
+     * written.
+     *
+     * @return the high watermark, in bytes.
+     */
+    public int getWriteBufferHighWatermark() {
+        return (int) outbound.getHighWatermark();
+    }
+
+    /**
+     * Returns whether this
+     * <code>IRCClient</code> is writable, that is, whether the lines waiting
+     * to be written have not risen above the high watermark since they last
+     * fell to the low watermark.
+     *
+     * @return true if the client is writable.
+     */
+    public boolean isWritable() {
+        return outbound.isWritable();
+    }
+
+    /**
+     * Returns the number of bytes of the lines waiting to be written by this
+     * <code>IRCClient</code>, including those held back by flood control and
+     * those being written.
+     *
+     * @return the number of bytes.
+     */
+    public long getQueuedBytes() {
+        return outbound.getPendingBytes();
+    }
+
+    /**
+     * Sets the charset used to encode the lines sent by this
+     * <code>IRCClient</code> and to decode the lines it receives. By default
+     * UTF-8 is used.
+     *
+     * @param charset the charset.
+     */
+    public void setCharset(Charset charset) {
+        Objects.requireNonNull(charset);
+
+        codec.setCharset(charset);
+    }
+
+    /**
+     * Returns the charset used to encode the lines sent by this
+     * <code>IRCClient</code> and to decode the lines it receives.
+     *
+     * @return the charset.
+     */
+    public Charset getCharset() {
+        return codec.getCharset();
+    }
+
+    /**
+     * Sets the charset used to decode received text which is not valid in
+     * the charset of this
+     * <code>IRCClient</code>. Channels and users from which such text is
+     * received are subsequently sent text encoded with the fallback charset.
+     * By default ISO-8859-1 is used.
+     *
+     * @param charset the fallback charset.
+     */
+    public void setFallbackCharset(Charset charset) {
+        Objects.requireNonNull(charset);
+
+        codec.setFallbackCharset(charset);
+    }
+
+    /**
+     * Returns the charset used to decode received text which is not valid in
+     * the charset of this
+     * <code>IRCClient</code>.
+     *
+     * @return the fallback charset.
+     */
+    public Charset getFallbackCharset() {
+        return codec.getFallbackCharset();
+    }
+
+    /**
+     * Sets the charset used to encode text sent to, and decode text received
+     * from, the specified channel or user, overriding the charset of this
+     * <code>IRCClient</code>.
+     *
+     * @param target the channel or nickname.
+     * @param charset the charset, or <tt>null</tt> to remove the override.
+     */
+    public void setCharset(String target, Charset charset) {
+        Objects.requireNonNull(target);
+
+        codec.setCharset(target, charset);
+    }
+
+    /**
+     * Returns the charset used to encode text sent to the specified channel
+     * or user.
+     *
+     * @param target the channel or nickname.
+     * @return the charset.
+     */
+    public Charset getCharset(String target) {
+        return codec.charsetFor(target);
+    }
+
+    /**
+     * Sets the value of a socket option of the connection underlying this
+     * <code>IRCClient</code>. Options may be set before or after the client
+     * is connected, and are applied again to the connections made when the
+     * client reconnects.
+     *
+     * @param name the socket option.
+     * @param value the value of the socket option.
      *
      * @throws IOException if an I/O error occurs
+     * @throws UnsupportedOperationException if the socket option is not
+     * supported
+     * @see java.net.StandardSocketOptions
      */
-    @Override
-    public void close() throws IOException {
-        group.shutdownNow();
+    public <T> void setOption(SocketOption<T> name, T value) throws IOException {
+        synchronized (options) {
+            socket.setOption(name, value);
+            options.put(name, value);
+        }
+    }
+
+    /**
+     * Returns the value of a socket option of the connection underlying this
+     * <code>IRCClient</code>.
+     *
+     * @param name the socket option.
+     * @return the value of the socket option.
+     *
+     * @throws IOException if an I/O error occurs
+     * @throws UnsupportedOperationException if the socket option is not
+     * supported
+     */
+    public <T> T getOption(SocketOption<T> name) throws IOException {
+        return socket.getOption(name);
+    }
+
+    /**
+     * Enables or disables Nagle's algorithm (<tt>TCP_NODELAY</tt>) on the
+     * connection underlying this
+     * <code>IRCClient</code>.
+     *
+     * @param on true to disable Nagle's algorithm.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void setTcpNoDelay(boolean on) throws IOException {
+        setOption(StandardSocketOptions.TCP_NODELAY, on);
+    }
+
+    /**
+     * Sets the size of the socket send buffer (<tt>SO_SNDBUF</tt>) of the
+     * connection underlying this
+     * <code>IRCClient</code>.
+     *
+     * @param size the size in bytes.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void setSendBufferSize(int size) throws IOException {
+        setOption(StandardSocketOptions.SO_SNDBUF, size);
+    }
+
+    /**
+     * Sets the size of the socket receive buffer (<tt>SO_RCVBUF</tt>) of the
+     * connection underlying this
+     * <code>IRCClient</code>.
+     *
+     * @param size the size in bytes.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void setReceiveBufferSize(int size) throws IOException {
+        setOption(StandardSocketOptions.SO_RCVBUF, size);
+    }
+
+    /**
+     * Sets whether this
+     * <code>IRCClient</code> encodes the lines it writes into direct buffers,
+     * rather than heap buffers. Direct buffers are written to the socket
+     * without being copied, and are the default. Either kind is drawn from a
+     * pool shared by all clients, and returned to it once written.
+     *
+     * @param direct true to encode lines into direct buffers.
+     */
+    public void setDirectBuffers(boolean direct) {
+        this.directBuffers = direct;
+    }
+
+    /**
+     * Returns whether this
+     * <code>IRCClient</code> encodes the lines it writes into direct buffers.
+     *
+     * @return true if lines are encoded into direct buffers.
+     */
+    public boolean isDirectBuffers() {
+        return directBuffers;
+    }
+
+    /**
+     * Returns the address of the remote host which this
+     * <code>IRCClient</code> instance is connected to.
+     *
+     * @return the address of the remote host.
+     * @throws ClosedChannelException if the underlying channel has already been
+     * closed
+     */
+    public String getRemoteAddress() throws IOException, ClosedChannelException {
+        if (!connected) {
+            throw new IllegalStateException("Client not yet connected");
+        }
 
-        fire(new IRCConnectionClosedEvent(this));
+        return ((InetSocketAddress) socket.getRemoteAddress()).getHostName();
     }
 
-    private void handleMessage(String raw) {
-        IRCUser user = null;
-        int split = raw.indexOf(' ');
-        if (raw.startsWith(":")) {
-            user = new IRCUser(raw.substring(1, split));
-            raw = raw.substring(split + 1);
-            split = raw.indexOf(' ');
+    /**
+     * Returns the port on the port number which this
+     * <code>IRCClient</code> instance is connected via.
+     *
+     * @return the port on the remote host, or -1.
+     * @throws ClosedChannelException if the underlying channel has already been
+     * closed
+     */
+    public int getRemotePort() throws IOException, ClosedChannelException {
+        if (!connected) {
+            throw new IllegalStateException("Client not yet connected");
         }
 
-        fire(new IRCRawMessageEvent(this, user, raw));
+        return ((InetSocketAddress) socket.getRemoteAddress()).getPort();
+    }
 
-        String keyword = raw.substring(0, split);
-        String args = raw.substring(split + 1);
+    /**
+     * Returns the nickname associated with this
+     * <code>IRCClient</code> instance.
+     *
+     * @return the nickname associated with this <code>IRCClient</code>
+     * instance.
+     */
+    public String getNickname() {
+        return nickname;
+    }
+
+    /**
+     * Returns the username associated with this
+     * <code>IRCClient</code> instance.
+     *
+     * @return the username associated with this <code>IRCClient</code>
+     * instance.
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Returns the "real name" associated with this
+     * <code>IRCClient</code> instance.
+     *
+     * @return the "real name" associated with this <code>IRCClient</code>
+     * instance.
+     */
+    public String getRealname() {
+        return realname;
+    }
+
+    /**
+     * Returns the channels which this
+     * <code>IRCClient</code> is a member of.
+     *
+     * This list is free to be manipulated or changed by the caller.
+     *
+     * @return a list of the channels which this <code>IRCClient</code> is a
+     * member of
+     */
+    public List<String> getChannels() {
+        return tracker.getNames();
+    }
+
+    /**
+     * Returns the state of the specified channel, including its members, or
+     * <tt>null</tt> if this
+     * <code>IRCClient</code> is not a member of the channel.
+     *
+     * @param channel the name of the channel.
+     * @return the channel, or <tt>null</tt>.
+     */
+    public IRCChannel getChannel(String channel) {
+        return tracker.get(channel);
+    }
+
+    /**
+     * Sets the executor on which the listeners of this
+     * <code>IRCClient</code> are invoked, or <tt>null</tt> to invoke them on
+     * the I/O thread of the client, which is the default.
+     *
+     * Invoking listeners on an executor keeps slow listeners from delaying
+     * the reading and writing of the connection, including replies to server
+     * <tt>PING</tt>s. Events concerning the same channel, or the same
+     * nickname, are still delivered one at a time and in order, while events
+     * concerning different channels or nicknames may be delivered in
+     * parallel. Events not concerning any channel or nickname, such as
+     * numeric replies and connection events, are delivered in order with
+     * each other.
+     *
+     * Any executor may be used; on Java 21 and later,
+     * <tt>Executors.newVirtualThreadPerTaskExecutor()</tt> gives each
+     * running listener a virtual thread.
+     *
+     * @param executor the executor, or <tt>null</tt>.
+     */
+    public void setDispatchExecutor(Executor executor) {
+        dispatcher = executor == null ? null : new IRCDispatcher(listeners, executor);
+    }
+
+    /**
+     * Returns the executor on which the listeners of this
+     * <code>IRCClient</code> are invoked, or <tt>null</tt> if they are invoked
+     * on its I/O thread.
+     *
+     * @return the executor, or <tt>null</tt>.
+     */
+    public Executor getDispatchExecutor() {
+        IRCDispatcher d = dispatcher;
+        return d == null ? null : d.getExecutor();
+    }
+
+    /**
+     * Returns the key of the specified nickname or channel name, which is
+     * equal to the key of any name the server considers the same.
+     *
+     * @param name the nickname or channel name.
+     * @return the key.
+     */
+    public IRCKey getKey(String name) {
+        return keys.key(name);
+    }
+
+    /**
+     * Returns the statistics of the cache of message sources kept by this
+     * <code>IRCClient</code>.
+     *
+     * @return the statistics of the cache.
+     */
+    public IRCCacheStats getUserCacheStats() {
+        return users.getStats();
+    }
+
+    /**
+     * Asks that the specified IRCv3 capability be enabled, if the server
+     * supports it, when this
+     * <code>IRCClient</code> next connects. The <tt>batch</tt>,
+     * <tt>message-tags</tt> and <tt>server-time</tt> capabilities are
+     * requested by default.
+     *
+     * @param capability the name of the capability.
+     */
+    public void requestCapability(String capability) {
+        capabilities.getWanted().add(capability);
+    }
+
+    /**
+     * Returns the IRCv3 capabilities which the server has enabled for this
+     * <code>IRCClient</code>.
+     *
+     * @return an immutable snapshot of the enabled capabilities.
+     */
+    public Set<String> getCapabilities() {
+        return Collections.unmodifiableSet(new HashSet<>(capabilities.getEnabled()));
+    }
+
+    /**
+     * Returns whether the server has enabled the specified IRCv3 capability
+     * for this
+     * <code>IRCClient</code>.
+     *
+     * @param capability the name of the capability.
+     * @return true if the capability is enabled.
+     */
+    public boolean hasCapability(String capability) {
+        return capabilities.getEnabled().contains(capability);
+    }
+
+    /**
+     * Returns the case mapping of the server this
+     * <code>IRCClient</code> is connected to, which is RFC 1459 until the
+     * server advertises otherwise.
+     *
+     * @return the case mapping.
+     */
+    public IRCCaseMapping getCaseMapping() {
+        return keys.getCaseMapping();
+    }
+
+    /**
+     * Returns whether this
+     * <code>IRCClient</code> instance is invisible.
+     *
+     * @return whether this <code>IRCClient</code> instance is invisible.
+     */
+    public boolean isInvisible() {
+        return invisible;
+    }
+
+    /**
+     * Returns the closed state of this
+     * <code>IRCClient</code>. A client which is reconnecting is not closed.
+     *
+     * @return true if the client has been closed
+     * @see #close
+     */
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * Waits until this
+     * <code>IRCClient</code> is closed.
+     *
+     * @throws InterruptedException if the waiting thread is interrupted.
+     */
+    public void waitFor() throws InterruptedException {
+        closeLatch.await();
+    }
+
+    /**
+     * Waits until this
+     * <code>IRCClient</code> is closed, or until the specified number of
+     * milliseconds elapse.
+     *
+     * @param millis the maximum number of milliseconds to wait for
+     *
+     * @throws InterruptedException if the waiting thread is interrupted.
+     */
+    public void waitFor(int millis) throws InterruptedException {
+        closeLatch.await(millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Closes the socket underlying this
+     * <code>IRCClient</code> abruptly. If the connection is already closed then
+     * invoking this method has no effect.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
 
-        int reply = -1;
         try {
-            if (keyword.length() == 3) {
-                reply = Integer.parseInt(keyword);
+            closeChannel(socket);
+        } finally {
+            if (manager == null) {
+                group.shutdownNow();
+            } else {
+                manager.release(this);
+            }
+
+            tracker.clear();
+            connected = false;
+            synchronized (writability) {
+                writability.notifyAll();
+            }
+            failDeferred();
+            flush();
+            ClosedChannelException cause = new ClosedChannelException();
+            pendingJoins.failAll(cause);
+            pendingParts.failAll(cause);
+            pendingNicks.failAll(cause);
+            queries.clear(cause);
+            closeLatch.countDown();
+            fire(new IRCConnectionClosedEvent(this));
+        }
+    }
+
+    /**
+     * Recreates the keys held outside the channel tracker after the case
+     * mapping has changed, so that names still match under the new mapping.
+     */
+    private void rekey() {
+        for (IRCKey channel : new ArrayList<>(joining)) {
+            joining.remove(channel);
+            joining.add(keys.key(channel.getName()));
+        }
+        pendingJoins.rekey();
+        pendingParts.rekey();
+        pendingNicks.rekey();
+        codec.rekey();
+        queries.rekey();
+    }
+
+    private void handleMessage(IRCMessage message) {
+        IRCUser user = message.getSource();
+
+        Batch batch = null;
+        if (!batches.isEmpty()) {
+            String reference = message.getBatch();
+            if (reference != null) {
+                batch = batches.get(reference);
             }
-        } catch (NumberFormatException nfe) {
+        }
+        // The messages of a batch are only held back from their usual events
+        // if someone listens for the batch as a whole.
+        quiet = batch != null && listeners.hasListeners(IRCBatchEvent.class);
+        if (quiet) {
+            batch.messages.add(message.getLine());
+        }
+        dispatchKey = dispatcher == null ? null : dispatchKey(message, user);
+
+        if (wants(IRCRawMessageEvent.class)) {
+            deliver(new IRCRawMessageEvent(this, user, message.getBody(), message.getTags()));
         }
 
-        if (reply == -1) {
+        if (!message.isNumeric()) {
+            String keyword = message.getCommand();
+            if (keyword == null) {
+                return;
+            }
+
             switch (keyword) {
                 case "PING": {
-                    queueWrite("PONG " + args);
+                    send(IRCPriority.HIGH, "PONG ", message.getArgs());
+                    break;
+                }
+                case "CAP": {
+                    String subcommand = message.getParam(1);
+                    if (subcommand == null) {
+                        break;
+                    }
+
+                    boolean more = message.getParamCount() > 3 && message.paramEquals(2, "*");
+                    String reply = capabilities.handle(subcommand, more, message.getLastParam());
+                    if (reply != null) {
+                        send(reply, IRCPriority.HIGH);
+                    }
+                    break;
+                }
+                case "AUTHENTICATE": {
+                    String reply = capabilities.authenticate(message.getParam(0));
+                    if (reply != null) {
+                        send(reply, IRCPriority.HIGH);
+                    }
+                    break;
+                }
+                case "BATCH": {
+                    String reference = message.getParam(0);
+                    if (reference == null || reference.length() < 2) {
+                        break;
+                    }
+
+                    if (reference.charAt(0) == '+') {
+                        String key = reference.substring(1);
+                        if (batch != null) {
+                            // A nested batch is folded into the outermost one,
+                            // which already holds the line opening it.
+                            batches.put(key, batch);
+                            break;
+                        }
+
+                        List<String> params = message.getParams();
+                        String type = params.size() > 1 ? params.get(1) : "";
+                        params = params.size() > 2 ? params.subList(2, params.size()) : Collections.<String>emptyList();
+                        batches.put(key, new Batch(key, type, params));
+                    } else if (reference.charAt(0) == '-') {
+                        String key = reference.substring(1);
+                        Batch ended = batches.remove(key);
+                        if (ended != null && ended.reference.equals(key)) {
+                            deliver(new IRCBatchEvent(this, key, ended.type, ended.params, Collections.unmodifiableList(ended.messages)));
+                        }
+                    }
                     break;
                 }
                 case "JOIN": {
-                    channels.add(args);
-                    fire(new IRCChannelJoinEvent(this, args));
+                    String channel = message.getParam(0);
+                    queries.channelChanged(channel);
+                    if (user != null) {
+                        queries.userChanged(user.getNickname());
+                    }
+                    if (isSelf(user)) {
+                        joining.remove(keys.key(channel));
+                        if (user != null) {
+                            prefixLength = 1 + IRCLine.length(message.getPrefix(), codec.getCharset()) + 1;
+                        }
+
+                        tracker.selfJoin(channel);
+                        deliver(new IRCChannelJoinEvent(this, channel));
+                    } else {
+                        tracker.join(channel, user.getNickname());
+                    }
                     break;
                 }
                 case "PART": {
-                    channels.remove(args);
-                    fire(new IRCChannelPartEvent(this, args, false));
+                    String channel = message.getParam(0);
+                    queries.channelChanged(channel);
+                    if (user != null) {
+                        queries.userChanged(user.getNickname());
+                    }
+                    if (isSelf(user)) {
+                        tracker.selfPart(channel);
+                        pendingParts.complete(keys.lookup(channel), null);
+                        deliver(new IRCChannelPartEvent(this, channel, false));
+                    } else {
+                        tracker.part(channel, user.getNickname());
+                    }
+                    break;
+                }
+                case "KICK": {
+                    String channel = message.getParam(0);
+                    String target = message.getParam(1);
+                    queries.channelChanged(channel);
+                    queries.userChanged(target);
+                    if (target != null && keys.equals(target, nickname)) {
+                        tracker.selfPart(channel);
+                        deliver(new IRCChannelPartEvent(this, channel, true));
+                    } else if (target != null) {
+                        tracker.part(channel, target);
+                    }
+                    break;
+                }
+                case "NICK": {
+                    String to = message.getParam(0);
+                    if (user == null || to == null) {
+                        break;
+                    }
+
+                    tracker.nick(user.getNickname(), to);
+                    queries.userChanged(user.getNickname());
+                    queries.userChanged(to);
+                    if (isSelf(user)) {
+                        nickname = to;
+                        pendingNicks.complete(keys.lookup(to), to);
+                        deliver(new IRCNicknameChangeEvent(this, to));
+                    }
                     break;
                 }
-                case "KICK": {
-                    int space = args.indexOf(' ');
-                    if (args.substring(space + 1).equals(getNickname())) {
-                        channels.remove(args);
-                        fire(new IRCChannelPartEvent(this, args.substring(0, space), true));
+                case "MODE": {
+                    String target = message.getParam(0);
+                    if (target != null && tracker.isChannel(target)) {
+                        tracker.mode(target, message);
                     }
                     break;
                 }
                 case "PRIVMSG": {
-                    fire(new IRCPrivateMessageEvent(this, user, args));
+                    if (wants(IRCPrivateMessageEvent.class)) {
+                        deliver(new IRCPrivateMessageEvent(this, user, message.getArgs(), message.getTags()));
+                    }
                     break;
                 }
                 case "QUIT": {
-                    if (user == null || user.getNickname().equals(nickname)) {
+                    if (user != null) {
+                        queries.userChanged(user.getNickname());
+                    }
+                    if (isSelf(user)) {
                         try {
                             close();
                         } catch (IOException ex) {
                         }
+                    } else {
+                        tracker.quit(user.getNickname());
+                    }
+                    break;
+                }
+                case "AWAY":
+                case "ACCOUNT":
+                case "CHGHOST": {
+                    if (user != null) {
+                        queries.userChanged(user.getNickname());
                     }
                     break;
                 }
                 case "ERROR": {
-                    if (user == null || user.getNickname().equals(nickname)) {
-                        fire(new IRCErrorEvent(this, user, args));
+                    if (isSelf(user)) {
+                        if (wants(IRCErrorEvent.class)) {
+                            deliver(new IRCErrorEvent(this, user, message.getArgs(), message.getTags()));
+                        }
                     }
                     break;
                 }
@@ -487,169 +1694,748 @@ public class IRCClient implements Closeable {
                 }
             }
         } else {
-            switch (IRCReply.toEnum(reply)) {
+            IRCReply reply = IRCReply.toEnum(message.getNumeric());
+            queries.reply(reply, message);
+            switch (reply) {
                 case WELCOME: {
-                    fire(new IRCWelcomeEvent(this));
-                    fire(new IRCNicknameChangeEvent(this, nickname));
+                    capabilities.registered();
+                    synchronized (reconnection) {
+                        attempts = 0;
+                        rejoin = Collections.emptySet();
+                    }
+                    if (message.getParamCount() > 1) {
+                        nickname = message.getParam(0);
+                    }
+
+                    deliver(new IRCWelcomeEvent(this));
+                    deliver(new IRCNicknameChangeEvent(this, nickname));
 
                     wasWelcomed();
                     break;
                 }
+                case ISUPPORT: {
+                    IRCCaseMapping mapping = keys.getCaseMapping();
+                    for (int i = 1; i < message.getParamCount() - 1; i++) {
+                        tracker.isupport(message.getParam(i));
+                    }
+                    if (keys.getCaseMapping() != mapping) {
+                        rekey();
+                    }
+                    break;
+                }
+                case NAMREPLY: {
+                    int count = message.getParamCount();
+                    if (count >= 3) {
+                        tracker.names(message.getParam(count - 2), message.getParam(count - 1));
+                    }
+                    break;
+                }
+                case ENDOFNAMES: {
+                    String channel = message.getParam(1);
+                    tracker.endOfNames(channel);
+                    if (channel != null) {
+                        pendingJoins.complete(keys.lookup(channel), getChannel(channel));
+                    }
+                    break;
+                }
+                case NOTONCHANNEL: {
+                    refused(pendingParts, reply, message);
+                    break;
+                }
+                case UNAVAILRESOURCE: {
+                    // Either a nickname or a channel may be unavailable.
+                    refused(pendingNicks, reply, message);
+                    refused(pendingJoins, reply, message);
+                    break;
+                }
+                case NICKCOLLISION: {
+                    refused(pendingNicks, reply, message);
+                    break;
+                }
+                case NOSUCHCHANNEL:
+                case TOOMANYCHANNELS:
+                case CHANNELISFULL:
+                case INVITEONLYCHAN:
+                case BANNEDFROMCHAN:
+                case BADCHANNELKEY:
+                case BADCHANMASK:
+                case NOCHANMODES: {
+                    String channel = message.getParam(1);
+                    if (channel != null) {
+                        joining.remove(keys.key(channel));
+                    }
+                    refused(pendingJoins, reply, message);
+                    if (reply == IRCReply.NOSUCHCHANNEL) {
+                        refused(pendingParts, reply, message);
+                    }
+                    break;
+                }
+                case ERRONEUSNICKNAME: {
+                    refused(pendingNicks, reply, message);
+                    deliver(new IRCNicknameInvalidEvent(this, message.getParam(1)));
+                    break;
+                }
                 case NICKNAMEINUSE: {
-                    fire(new IRCNicknameInUseEvent(this, args.substring(args.indexOf(" ")).substring(args.indexOf(" ") + 1)));
+                    refused(pendingNicks, reply, message);
+                    deliver(new IRCNicknameInUseEvent(this, message.getParam(1)));
                     break;
                 }
                 case MOTDSTART: {
-                    int motdStart = args.indexOf(':');
-                    String sub = args.substring(motdStart);
-                    if (motdStart != -1 && sub.length() != 1 && sub.length() > 3) {
-                        motdStart = sub.indexOf(' ');
-                        sub = sub.substring(motdStart + 1, sub.length() - 3);
-
-                        if (motdStart != -1 && sub.length() != 1) {
-                            motd.append(sub).append("\n");
-                        }
+                    String text = motdLine(message.getLastParam());
+                    if (text.endsWith(" -")) {
+                        text = text.substring(0, text.length() - 2);
+                    }
+                    if (!text.isEmpty()) {
+                        motd.append(text).append("\n");
                     }
                     break;
                 }
                 case MOTD: {
-                    int motdStart = args.indexOf(':');
-                    String sub = args.substring(motdStart);
-                    if (motdStart != -1 && sub.length() != 1) {
-                        motdStart = sub.indexOf(' ');
-                        sub = sub.substring(motdStart + 1);
-
-                        if (motdStart != -1 && sub.length() != 1) {
-                            motd.append(sub).append("\n");
-                        }
+                    String text = motdLine(message.getLastParam());
+                    if (!text.isEmpty()) {
+                        motd.append(text).append("\n");
                     }
                     break;
                 }
                 case ENDOFMOTD: {
-                    int motdStart = args.indexOf(':');
-                    if (motdStart != -1 && args.substring(motdStart).length() != 1) {
-                        motd.append(args.substring(motdStart + 1)).append("\n");
+                    String text = message.getLastParam();
+                    if (text != null && !text.isEmpty()) {
+                        motd.append(text).append("\n");
+                    }
+                    deliver(new IRCMotdEvent(this, motd.toString()));
+                    break;
+                }
+                case NICKLOCKED:
+                case SASLSUCCESS:
+                case SASLFAIL:
+                case SASLTOOLONG:
+                case SASLABORTED:
+                case SASLALREADY: {
+                    String line = capabilities.authenticated();
+                    if (line != null) {
+                        send(line, IRCPriority.HIGH);
                     }
-                    fire(new IRCMotdEvent(this, motd.toString()));
                     break;
                 }
                 default: {
                     break;
                 }
             }
+
+            if (wants(IRCNumericEvent.class)) {
+                deliver(new IRCNumericEvent(this, user, message.getBody(), message.getTags(), message.getNumeric(), message.getParams()));
+            }
         }
     }
-    private static final HashMap<Class, Method> eventMethods = new HashMap<>();
 
-    static {
-        for (Method m : IRCAdapter.class.getMethods()) {
-            if (m.getParameterTypes().length == 1 && IRCEvent.class.isAssignableFrom(m.getParameterTypes()[0])) {
-                eventMethods.put(m.getParameterTypes()[0], m);
-            }
+    /**
+     * Returns whether the specified message source is this client. Messages
+     * without a source are considered to concern this client.
+     */
+    private boolean isSelf(IRCUser user) {
+        return user == null || keys.equals(user.getNickname(), nickname);
+    }
+
+    private static String motdLine(String text) {
+        if (text == null) {
+            return "";
         }
+
+        if (text.startsWith("- ")) {
+            text = text.substring(2);
+        } else if (text.equals("-")) {
+            text = "";
+        }
+        return text.trim();
     }
 
     private void fire(IRCEvent e) {
-        try {
-            Method m = eventMethods.get(e.getClass());
-            if (m == null) {
-                throw new IllegalArgumentException("No handler in IRCAdapter class for: " + e.getClass().getName());
-            }
+        fire(null, e);
+    }
 
-            m.invoke(adapter, e);
-        } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
-            Logger.getLogger(IRCClient.class.getName()).log(Level.SEVERE, null, ex);
+    /**
+     * Fires the specified event, on the dispatch executor if there is one, in
+     * order with the other events fired under the same key.
+     */
+    private void fire(Object key, IRCEvent e) {
+        IRCDispatcher d = dispatcher;
+        if (d == null) {
+            listeners.dispatch(e);
+        } else {
+            d.dispatch(key, e);
         }
     }
 
-    private void readLoop() {
-        socket.read(buff, this, new CompletionHandler<Integer, IRCClient>() {
-            @Override
-            public void completed(Integer result, IRCClient attachment) {
-                byte[] bytes = new byte[buff.position()];
+    /**
+     * Returns the key under which the events generated by the specified
+     * message are dispatched: the channel it concerns, otherwise its sender,
+     * or <tt>null</tt> for messages from the server itself.
+     */
+    private Object dispatchKey(IRCMessage message, IRCUser user) {
+        String target = message.getParam(0);
+        if (!message.isNumeric() && target != null && tracker.isChannel(target)) {
+            return keys.key(target);
+        }
+        return user == null || user.getHostname() == null ? null : keys.key(user.getNickname());
+    }
+
+    /**
+     * Fires an event generated by the message being handled, unless the
+     * message belongs to a batch, whose messages are delivered together.
+     */
+    private void deliver(IRCEvent e) {
+        if (!quiet) {
+            fire(dispatchKey, e);
+        }
+    }
 
-                buff.flip();
-                buff.get(bytes);
-                buff.rewind();
+    /**
+     * Returns whether an event of the specified type, generated by the
+     * message being handled, would be delivered to any listener. Frequent
+     * events are only built if it would.
+     */
+    private boolean wants(Class<? extends IRCEvent> type) {
+        return !quiet && listeners.hasListeners(type);
+    }
 
-                String raw = part + new String(bytes);
-                String[] split = raw.split("\r\n");
-                for (int i = 0; i < split.length - 1; i++) {
-                    handleMessage(split[i]);
-                }
-                part = "";
+    /**
+     * Handles the specified bytes as though they had been read from the
+     * connection, on the calling thread, which must be the only thread
+     * reading. This lets recorded traffic be replayed without a server.
+     */
+    void receive(byte[] buf, int off, int len) {
+        while (len > 0) {
+            ByteBuffer buffer = framer.buffer();
+            int count = Math.min(buffer.remaining(), len);
+            buffer.put(buf, off, count);
+            off += count;
+            len -= count;
+
+            framer.frame(lineHandler);
+        }
+    }
 
-                if (raw.endsWith("\r\n")) {
-                    handleMessage(split[split.length - 1]);
-                } else {
-                    part += split[split.length - 1];
+    private void readLoop(final IRCTransport transport) {
+        transport.read(framer.buffer(), new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer result, Void attachment) {
+                if (result == -1) {
+                    failed(new ClosedChannelException(), attachment);
+                    return;
                 }
 
-                readLoop();
+                framer.frame(lineHandler);
+
+                readLoop(transport);
             }
 
             @Override
-            public void failed(Throwable exc, IRCClient attachment) {
+            public void failed(Throwable exc, Void attachment) {
+                connectionLost(transport.getChannel(), exc);
+            }
+        });
+    }
+
+    private void open(final AsynchronousSocketChannel channel, final InetSocketAddress server) {
+        InetSocketAddress remote = server;
+        if (remote.isUnresolved()) {
+            remote = new InetSocketAddress(remote.getHostString(), remote.getPort());
+        }
+
+        final IRCClient me = this;
+        channel.connect(remote, this, new CompletionHandler<Void, IRCClient>() {
+            @Override
+            public void completed(Void result, IRCClient attachment) {
+                final IRCTransport opened;
                 try {
-                    close();
-                } catch (IOException ex) {
+                    opened = secure ? new IRCTlsTransport(channel, engine(server)) : new IRCPlainTransport(channel);
+                } catch (RuntimeException ex) {
+                    connectionLost(channel, ex);
+                    return;
                 }
+                transport = opened;
+
+                opened.handshake(new CompletionHandler<Void, Void>() {
+                    @Override
+                    public void completed(Void result, Void attachment) {
+                        connected = true;
+
+                        fire(new IRCConnectionEstablishedEvent(me));
+
+                        readLoop(opened);
+                        flush();
+                    }
+
+                    @Override
+                    public void failed(Throwable exc, Void attachment) {
+                        connectionLost(channel, exc);
+                    }
+                });
+            }
+
+            @Override
+            public void failed(Throwable exc, IRCClient attachment) {
+                connectionLost(channel, exc);
             }
         });
     }
 
-    private void sendMessage(String message) {
-        synchronized (outQueue) {
-            if (welcomed) {
-                queueWrite(message);
-            } else {
-                welcomeWaiters.add(message);
+    /**
+     * Handles the failure of the specified connection, either closing this
+     * client or scheduling an attempt to reconnect, according to the
+     * reconnect policy. Both directions of a connection may fail, so only the
+     * first failure of each connection is handled.
+     */
+    private void connectionLost(AsynchronousSocketChannel channel, Throwable cause) {
+        int attempt;
+        long delay;
+        synchronized (reconnection) {
+            if (channel == lost || closed.get()) {
+                return;
+            }
+            lost = channel;
+
+            attempt = ++attempts;
+            delay = quitting ? -1 : reconnectPolicy.getDelay(attempt, random);
+            if (delay >= 0) {
+                connected = false;
+                if (attempt == 1) {
+                    Set<IRCKey> channels = new LinkedHashSet<>();
+                    for (String name : tracker.getNames()) {
+                        channels.add(keys.key(name));
+                    }
+                    channels.addAll(joining);
+                    rejoin = channels;
+                }
+            }
+        }
+
+        if (delay < 0) {
+            try {
+                close();
+            } catch (IOException ex) {
+            }
+            return;
+        }
+
+        try {
+            closeChannel(channel);
+        } catch (IOException ex) {
+        }
+        tracker.clear();
+        joining.clear();
+        queries.clear(cause);
+
+        fire(new IRCConnectionLostEvent(this, cause, attempt, delay));
+        IRCScheduler.schedule(reconnect, executor, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens a new connection to the next server. The lines which register the
+     * client and rejoin its channels are put at the front of the queue, which
+     * holds everything else until the client is welcomed again.
+     */
+    private void reconnect() {
+        if (closed.get()) {
+            return;
+        }
+
+        if (!writing.compareAndSet(false, true)) {
+            // A write to the lost connection has yet to fail.
+            IRCScheduler.schedule(reconnect, executor, 10, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        Set<IRCKey> channels;
+        InetSocketAddress next;
+        synchronized (reconnection) {
+            channels = rejoin;
+            server = (server + 1) % servers.size();
+            next = servers.get(server);
+        }
+
+        try {
+            outbound.restart(registration(), channels);
+        } finally {
+            writing.set(false);
+        }
+        batches.clear();
+        framer.reset();
+        motd.setLength(0);
+        prefixLength = 0;
+
+        AsynchronousSocketChannel channel;
+        try {
+            channel = AsynchronousSocketChannel.open(group);
+            synchronized (options) {
+                for (Map.Entry<SocketOption<?>, Object> option : options.entrySet()) {
+                    setOption(channel, option.getKey(), option.getValue());
+                }
+                socket = channel;
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(IRCClient.class.getName()).log(Level.SEVERE, null, ex);
+            try {
+                close();
+            } catch (IOException ignored) {
+            }
+            return;
+        }
+
+        if (closed.get()) {
+            // The client was closed while the new connection was being
+            // opened, so the close may have missed it.
+            try {
+                channel.close();
+            } catch (IOException ex) {
             }
+            return;
+        }
+
+        try {
+            open(channel, next);
+        } catch (RuntimeException ex) {
+            connectionLost(channel, ex);
+        }
+    }
+
+    /**
+     * Creates the engine which secures a connection to the specified server.
+     * The engine is created for the server's host name and port, so that the
+     * name is verified against its certificate and the session may be
+     * resumed on reconnecting.
+     */
+    private SSLEngine engine(InetSocketAddress server) {
+        SSLEngine engine = getSSLContext().createSSLEngine(server.getHostString(), server.getPort());
+        engine.setUseClientMode(true);
+
+        SSLParameters parameters = engine.getSSLParameters();
+        parameters.setEndpointIdentificationAlgorithm("HTTPS");
+        engine.setSSLParameters(parameters);
+        return engine;
+    }
+
+    /**
+     * Closes the specified connection, through its transport if it has one so
+     * that the transport's buffers are released.
+     */
+    private void closeChannel(AsynchronousSocketChannel channel) throws IOException {
+        IRCTransport current = transport;
+        if (current != null && current.getChannel() == channel) {
+            current.close();
+        } else {
+            channel.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void setOption(AsynchronousSocketChannel channel, SocketOption<?> name, Object value) throws IOException {
+        channel.setOption((SocketOption<Object>) name, value);
+    }
+
+    private static InetSocketAddress address(String address, int port) {
+        if (address == null) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
         }
+        return InetSocketAddress.createUnresolved(address, port);
+    }
+
+    /**
+     * Returns the lines which register this client with a server.
+     */
+    private List<IRCLine> registration() {
+        Charset charset = codec.getCharset();
+        List<IRCLine> lines = new ArrayList<>(4);
+        lines.add(new IRCLine(capabilities.begin(), charset));
+        lines.add(new IRCLine("PASS " + password, charset));
+        lines.add(new IRCLine("USER " + username + " " + (invisible ? "8" : "0") + " * :" + realname, charset));
+        lines.add(new IRCLine("NICK " + nickname, charset));
+        return lines;
     }
 
     private void wasWelcomed() {
-        synchronized (outQueue) {
-            welcomed = true;
+        outbound.release();
+        flush();
+    }
+
+    /**
+     * Returns the length in bytes of the prefix the server adds to the lines
+     * this client sends when relaying them to other clients. Until the client
+     * sees its own prefix, the longest likely prefix is assumed.
+     */
+    private int getPrefixLength() {
+        int length = prefixLength;
+        if (length == 0) {
+            // ":" nick "!~" user "@" host " ", with a 10 byte username and a
+            // 63 byte hostname.
+            length = 1 + IRCLine.length(nickname, codec.getCharset()) + 2 + 10 + 1 + 63 + 1;
+        }
+        return length;
+    }
+
+    private void send(String raw, IRCPriority priority) {
+        send(priority, raw);
+    }
+
+    /**
+     * Sends the line made up of the specified parts, the first of which holds
+     * the command, without joining them.
+     */
+    private void send(IRCPriority priority, String... parts) {
+        outbound.add(new IRCLine(codec.getCharset(), null, parts), priority);
+        updateWritability();
+        flush();
+    }
+
+    /**
+     * Returns whether a line sent now may bypass the lines deferred by
+     * <code>sendAsync()</code>, because the queue is writable and there are
+     * none.
+     */
+    private boolean mayQueue() {
+        return outbound.isWritable() && deferred.isEmpty();
+    }
 
-            for (String message : welcomeWaiters) {
-                queueWrite(message);
+    /**
+     * Fires an event for each change in the writability of the queue. When
+     * the queue becomes writable, blocked senders are woken and deferred lines
+     * are moved into the queue until it fills again.
+     */
+    private void updateWritability() {
+        int change;
+        while ((change = outbound.updateWritability()) != 0) {
+            boolean writable = change > 0;
+            if (writable) {
+                acceptDeferred();
+                synchronized (writability) {
+                    writability.notifyAll();
+                }
             }
+            fire(new IRCWritabilityChangedEvent(this, writable));
         }
     }
 
-    private void queueWrite(String raw) {
-        synchronized (outQueue) {
-            outQueue.add(ByteBuffer.wrap((raw + "\r\n").getBytes()));
-            if (!asynchWriting && connected) {
-                writeLoop();
+    private void acceptDeferred() {
+        synchronized (deferred) {
+            IRCLine line;
+            while (outbound.isWritable() && (line = deferred.poll()) != null) {
+                outbound.add(line, IRCPriority.LOW);
             }
         }
     }
 
-    private void writeLoop() {
-        synchronized (outQueue) {
-            asynchWriting = true;
-            socket.write(outQueue.poll(), this, new CompletionHandler<Integer, IRCClient>() {
-                @Override
-                public void completed(Integer result, IRCClient attachment) {
-                    synchronized (outQueue) {
-                        asynchWriting = false;
-                        if (!outQueue.isEmpty()) {
-                            writeLoop();
-                        }
-                    }
+    private void failDeferred() {
+        IRCLine line;
+        while ((line = deferred.poll()) != null) {
+            line.getFuture().fail(new ClosedChannelException());
+        }
+    }
+
+    private static void checkTarget(String target) {
+        if (target.isEmpty() || target.indexOf(' ') != -1 || target.indexOf(',') != -1) {
+            throw new IllegalArgumentException("Target must be non-empty and contain no spaces or commas");
+        }
+    }
+
+    /**
+     * Sends the specified line, returning a future which waits on the
+     * specified key until a reply completes it, the line cannot be written or
+     * the command times out.
+     */
+    private <T> IRCFuture<T> command(IRCPendingReplies<T> pending, IRCKey key, String raw, IRCPriority priority) {
+        final IRCFuture<T> future = new IRCFuture<>();
+        if (closed.get()) {
+            future.fail(new ClosedChannelException());
+            return future;
+        }
+
+        pending.add(key, future);
+        expire(future);
+        queue(future, raw, priority);
+        return future;
+    }
+
+    /**
+     * Fails the specified future if it does not complete within the command
+     * timeout.
+     */
+    private <T> void expire(final IRCFuture<T> future) {
+        final ScheduledFuture<?> timeout = IRCScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                future.fail(new TimeoutException("No reply from the server"));
+            }
+        }, executor, commandTimeout, TimeUnit.NANOSECONDS);
+        future.addListener(new IRCFuture.Listener<T>() {
+            @Override
+            public void completed(IRCFuture<T> future) {
+                timeout.cancel(false);
+            }
+        });
+    }
+
+    /**
+     * Queues the specified line, failing the specified future if the line
+     * cannot be written.
+     */
+    private <T> void queue(final IRCFuture<T> future, String raw, IRCPriority priority) {
+        // A line with a future is never rewritten by the optimizer, so the
+        // command is sent as written and its reply can be matched.
+        IRCFuture<Void> written = new IRCFuture<>();
+        written.addListener(new IRCFuture.Listener<Void>() {
+            @Override
+            public void completed(IRCFuture<Void> written) {
+                Throwable failure = written.getFailure();
+                if (failure != null) {
+                    future.fail(failure);
                 }
+            }
+        });
+        outbound.add(new IRCLine(raw, codec.getCharset(), written), priority);
+        updateWritability();
+        flush();
+    }
 
-                @Override
-                public void failed(Throwable exc, IRCClient attachment) {
-                    try {
-                        close();
-                    } catch (IOException ex) {
-                    }
+    /**
+     * Fails the commands waiting on the name in the second parameter of the
+     * specified error reply.
+     */
+    private void refused(IRCPendingReplies<?> pending, IRCReply reply, IRCMessage message) {
+        String name = message.getParam(1);
+        if (name != null) {
+            pending.fail(keys.lookup(name), new IRCCommandException(reply, message.getParams()));
+        }
+    }
+
+    private IRCLine checkLine(String raw, IRCFuture<Void> future) {
+        if (raw.indexOf('\r') != -1 || raw.indexOf('\n') != -1) {
+            throw new IllegalArgumentException("Line must not contain line breaks");
+        }
+
+        Charset charset = codec.getCharset();
+        if (IRCLine.length(raw, charset) > IRCLine.MAX_LENGTH) {
+            throw new IllegalArgumentException("Line must be no more than " + IRCLine.MAX_LENGTH + " bytes");
+        }
+        return new IRCLine(raw, charset, future);
+    }
+
+    /**
+     * Starts a write if there is anything which may be written and no write is
+     * in progress. Any thread may call this method; only the thread which wins
+     * the write flag touches the gather array until the write completes. If
+     * flood control holds lines back, a flush is scheduled for when they may
+     * be sent.
+     *
+     * The drained lines are encoded together into one pooled buffer, which is
+     * returned to its pool once it has been written.
+     */
+    private void flush() {
+        if (closed.get()) {
+            abandon();
+            return;
+        }
+
+        while (connected && writing.compareAndSet(false, true)) {
+            int count = outbound.drain(drained, System.nanoTime());
+            if (count != 0) {
+                int bytes = 0;
+                for (int i = 0; i < count; i++) {
+                    bytes += drained[i].size();
+                }
+
+                IRCBufferPool pool = directBuffers ? IRCBufferPool.DIRECT : IRCBufferPool.HEAP;
+                ByteBuffer slab = pool.acquire(Math.max(slabSize, bytes));
+                for (int i = 0; i < count; i++) {
+                    encoder.encode(drained[i], slab);
+                }
+                slab.flip();
+
+                gather[0] = slab;
+                write(transport, count);
+                return;
+            }
+            writing.set(false);
+
+            long delay = outbound.getDelay();
+            if (delay > 0) {
+                if (flushScheduled.compareAndSet(false, true)) {
+                    IRCScheduler.schedule(scheduledFlush, executor, delay, TimeUnit.NANOSECONDS);
+                }
+                return;
+            }
+
+            if (!outbound.hasWritable()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Discards the lines left in the queue once this client has closed,
+     * failing their futures. Lines may be added concurrently, so the queue is
+     * checked again after each pass.
+     */
+    private void abandon() {
+        while (writing.compareAndSet(false, true)) {
+            outbound.abandon(new ClosedChannelException());
+            writing.set(false);
+            updateWritability();
+
+            if (outbound.getPendingBytes() == 0) {
+                return;
+            }
+        }
+    }
+
+    private void write(final IRCTransport transport, final int count) {
+        transport.write(gather, 0, 1, new CompletionHandler<Long, Void>() {
+            @Override
+            public void completed(Long result, Void attachment) {
+                if (gather[0].hasRemaining()) {
+                    write(transport, count);
+                    return;
                 }
-            });
 
+                releaseSlab();
+                outbound.written(drained, count, null);
+                writing.set(false);
+                updateWritability();
+                flush();
+            }
+
+            @Override
+            public void failed(Throwable exc, Void attachment) {
+                releaseSlab();
+                outbound.written(drained, count, exc);
+                writing.set(false);
+                updateWritability();
+
+                connectionLost(transport.getChannel(), exc);
+                flush();
+            }
+        });
+    }
+
+    private void releaseSlab() {
+        ByteBuffer slab = gather[0];
+        gather[0] = null;
+        (slab.isDirect() ? IRCBufferPool.DIRECT : IRCBufferPool.HEAP).release(slab);
+    }
+
+    /**
+     * This class holds a batch of messages which is being received.
+     */
+    private static final class Batch {
+
+        private final String reference;
+        private final String type;
+        private final List<String> params;
+        private final List<String> messages = new ArrayList<>();
+
+        Batch(String reference, String type, List<String> params) {
+            this.reference = reference;
+            this.type = type;
+            this.params = params;
         }
     }
 }
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class manages a group of
+ * <code>IRCClient</code> instances which share a single pool of I/O threads.
+ * The number of threads used by an
+ * <code>IRCClientManager</code> is fixed when it is constructed and does not
+ * grow with the number of clients it manages.
+ *
+ * Closing an individual client does not affect the other clients of its
+ * manager; closing the manager closes every client it manages.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+public class IRCClientManager implements Closeable {
+
+    private final AsynchronousChannelGroup group;
+    private final ExecutorService executor;
+    private final Set<IRCClient> clients = Collections.newSetFromMap(new ConcurrentHashMap<IRCClient, Boolean>());
+
+    /**
+     * Constructs a new
+     * <code>IRCClientManager</code> with one I/O thread per available
+     * processor.
+     *
+     * @exception IOException if an I/O error occurs when creating the thread
+     * pool.
+     */
+    public IRCClientManager() throws IOException {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a new
+     * <code>IRCClientManager</code> with the specified number of I/O threads.
+     *
+     * @param threads the number of I/O threads.
+     *
+     * @exception IOException if an I/O error occurs when creating the thread
+     * pool.
+     * @throws IllegalArgumentException if the number of threads is not
+     * positive
+     */
+    public IRCClientManager(int threads) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive");
+        }
+
+        this.executor = Executors.newFixedThreadPool(threads, Executors.defaultThreadFactory());
+        this.group = AsynchronousChannelGroup.withThreadPool(executor);
+    }
+
+    /**
+     * Constructs a new
+     * <code>IRCClient</code> managed by this
+     * <code>IRCClientManager</code> with the specified nickname and
+     * <code>IRCAdapter</code>.
+     *
+     * @param nickname the nickname.
+     * @param adapter the adapter to be associated with the new
+     * <code>IRCClient</code>.
+     * @return the new client.
+     *
+     * @exception IOException if an I/O error occurs when creating the
+     * connection.
+     */
+    public IRCClient createClient(String nickname, IRCAdapter adapter) throws IOException {
+        return createClient(nickname, nickname, nickname, false, adapter);
+    }
+
+    /**
+     * Constructs a new
+     * <code>IRCClient</code> managed by this
+     * <code>IRCClientManager</code> with the specified nickname, username,
+     * real name, invisibility flag and
+     * <code>IRCAdapter</code>.
+     *
+     * @param nickname the nickname.
+     * @param username the username.
+     * @param realname the real name.
+     * @param invisible whether the client should be invisible to other clients.
+     * @param adapter the adapter to be associated with the new
+     * <code>IRCClient</code>.
+     * @return the new client.
+     *
+     * @exception IOException if an I/O error occurs when creating the
+     * connection.
+     * @throws IllegalStateException if this manager has been closed
+     */
+    public IRCClient createClient(String nickname, String username, String realname, boolean invisible, IRCAdapter adapter) throws IOException {
+        if (isClosed()) {
+            throw new IllegalStateException("Manager has been closed");
+        }
+
+        IRCClient client = new IRCClient(nickname, username, realname, invisible, adapter, this);
+        clients.add(client);
+        return client;
+    }
+
+    /**
+     * Returns the clients which are currently managed by this
+     * <code>IRCClientManager</code>. Clients are removed from the manager once
+     * they are closed.
+     *
+     * This list is free to be manipulated or changed by the caller.
+     *
+     * @return a list of the clients managed by this
+     * <code>IRCClientManager</code>
+     */
+    public List<IRCClient> getClients() {
+        return new ArrayList<>(clients);
+    }
+
+    /**
+     * Returns the number of clients which are currently managed by this
+     * <code>IRCClientManager</code>.
+     *
+     * @return the number of managed clients.
+     */
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    /**
+     * Returns whether this
+     * <code>IRCClientManager</code> has been closed.
+     *
+     * @return true if the manager has been closed
+     * @see #close
+     */
+    public boolean isClosed() {
+        return group.isShutdown();
+    }
+
+    /**
+     * Waits until this
+     * <code>IRCClientManager</code> is closed.
+     *
+     * @throws InterruptedException if the waiting thread is interrupted.
+     */
+    public void waitFor() throws InterruptedException {
+        group.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Closes every client managed by this
+     * <code>IRCClientManager</code> abruptly and releases its I/O threads. If
+     * the manager is already closed then invoking this method has no effect.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        for (IRCClient client : getClients()) {
+            client.close();
+        }
+
+        group.shutdownNow();
+    }
+
+    AsynchronousChannelGroup getGroup() {
+        return group;
+    }
+
+    /**
+     * Returns the thread pool of the group, on which the clients also run
+     * their deferred work.
+     */
+    ExecutorService getExecutor() {
+        return executor;
+    }
+
+    void release(IRCClient client) {
+        clients.remove(client);
+    }
+}
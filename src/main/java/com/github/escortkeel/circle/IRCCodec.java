@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class holds the charsets used by an
+ * <code>IRCClient</code> to decode the lines it receives and to encode the
+ * lines it sends.
+ *
+ * Received text is decoded with the primary charset (UTF-8 by default). Text
+ * which is not valid in the primary charset is decoded with the fallback
+ * charset (ISO-8859-1 by default) instead, and the channel or nickname it was
+ * received from is remembered so that replies to it are encoded with the
+ * fallback charset too. Charsets may also be set explicitly for a target, in
+ * which case they are used in both directions.
+ *
+ * Decoding is only performed by the thread reading from the connection, which
+ * allows the decoders to be reused; the charset lookups may be performed by
+ * any thread.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+final class IRCCodec {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+    static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    /**
+     * The maximum number of targets whose charset is remembered after
+     * detection.
+     */
+    private static final int MAX_DETECTED = 1024;
+    private final IRCKeyTable keys;
+    private final Map<IRCKey, Charset> overrides = new ConcurrentHashMap<>();
+    private final Map<IRCKey, Charset> detected = new ConcurrentHashMap<>();
+    private volatile Charset charset = UTF_8;
+    private volatile Charset fallback = ISO_8859_1;
+    private CharsetDecoder decoder;
+    private CharsetDecoder fallbackDecoder;
+    private CharBuffer chars = CharBuffer.allocate(512);
+    private byte[] wrappedArray;
+    private ByteBuffer wrapped;
+
+    IRCCodec(IRCKeyTable keys) {
+        this.keys = keys;
+    }
+
+    Charset getCharset() {
+        return charset;
+    }
+
+    void setCharset(Charset charset) {
+        this.charset = charset;
+        detected.clear();
+    }
+
+    Charset getFallbackCharset() {
+        return fallback;
+    }
+
+    void setFallbackCharset(Charset fallback) {
+        this.fallback = fallback;
+        detected.clear();
+    }
+
+    /**
+     * Sets the charset of the specified target, or removes it if the charset
+     * is <tt>null</tt>.
+     */
+    void setCharset(String target, Charset charset) {
+        if (charset == null) {
+            overrides.remove(keys.key(target));
+        } else {
+            overrides.put(keys.key(target), charset);
+        }
+    }
+
+    /**
+     * Recreates the keys of the targets with a set charset after the case
+     * mapping has changed, and forgets the detected charsets.
+     */
+    void rekey() {
+        for (Map.Entry<IRCKey, Charset> override : new ArrayList<>(overrides.entrySet())) {
+            overrides.remove(override.getKey());
+            overrides.put(keys.key(override.getKey().getName()), override.getValue());
+        }
+        detected.clear();
+    }
+
+    /**
+     * Returns whether any target has an explicitly set charset.
+     */
+    boolean hasOverrides() {
+        return !overrides.isEmpty();
+    }
+
+    /**
+     * Returns the charset with which text sent to the specified target should
+     * be encoded.
+     */
+    Charset charsetFor(String target) {
+        if (target != null && (!overrides.isEmpty() || !detected.isEmpty())) {
+            IRCKey key = keys.lookup(target);
+            Charset c = overrides.get(key);
+            if (c == null) {
+                c = detected.get(key);
+            }
+            if (c != null) {
+                return c;
+            }
+        }
+        return charset;
+    }
+
+    /**
+     * Returns whether the specified bytes are all ASCII.
+     */
+    static boolean isAscii(byte[] buf, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the specified bytes, which are known to be ASCII.
+     */
+    static String decodeAscii(byte[] buf, int from, int to) {
+        return new String(buf, from, to - from, ISO_8859_1);
+    }
+
+    /**
+     * Decodes the specified bytes, which were received from the specified
+     * target. The target may be <tt>null</tt> if it is not known.
+     */
+    String decode(byte[] buf, int from, int to, String target) {
+        if (isAscii(buf, from, to)) {
+            return decodeAscii(buf, from, to);
+        }
+
+        Charset primary = charset;
+        if (target != null && !overrides.isEmpty()) {
+            Charset c = overrides.get(keys.lookup(target));
+            if (c != null) {
+                primary = c;
+            }
+        }
+
+        if (decoder == null || !decoder.charset().equals(primary)) {
+            decoder = primary.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT);
+        }
+
+        String text = decode(decoder, buf, from, to);
+        if (text == null) {
+            Charset secondary = fallback;
+            if (fallbackDecoder == null || !fallbackDecoder.charset().equals(secondary)) {
+                fallbackDecoder = secondary.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            }
+
+            text = decode(fallbackDecoder, buf, from, to);
+            if (target != null && !secondary.equals(charset)) {
+                if (detected.size() >= MAX_DETECTED) {
+                    detected.clear();
+                }
+                detected.put(keys.key(target), secondary);
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Decodes the specified bytes with the specified decoder, returning
+     * <tt>null</tt> if they are not valid in its charset.
+     */
+    private String decode(CharsetDecoder decoder, byte[] buf, int from, int to) {
+        if (buf != wrappedArray) {
+            wrappedArray = buf;
+            wrapped = ByteBuffer.wrap(buf);
+        }
+        wrapped.limit(to).position(from);
+
+        int needed = (int) Math.ceil((to - from) * (double) decoder.maxCharsPerByte());
+        if (chars.capacity() < needed) {
+            chars = CharBuffer.allocate(needed);
+        }
+        chars.clear();
+
+        decoder.reset();
+        CoderResult result = decoder.decode(wrapped, chars, true);
+        if (!result.isError()) {
+            result = decoder.flush(chars);
+        }
+        if (result.isError()) {
+            return null;
+        }
+
+        chars.flip();
+        return chars.toString();
+    }
+}
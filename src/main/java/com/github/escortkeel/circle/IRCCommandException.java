@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.util.List;
+
+/**
+ * This exception is thrown when the server rejects a command sent by an
+ * <code>IRCClient</code> with an error reply.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+public class IRCCommandException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+    private final IRCReply reply;
+    private final List<String> params;
+
+    /**
+     * Constructs a new
+     * <code>IRCCommandException</code> with the specified parameters.
+     */
+    public IRCCommandException(IRCReply reply, List<String> params) {
+        super(reply.getCode() + " " + (params.isEmpty() ? reply.name() : params.get(params.size() - 1)));
+
+        this.reply = reply;
+        this.params = params;
+    }
+
+    /**
+     * Returns the error reply sent by the server.
+     *
+     * @return the reply.
+     */
+    public IRCReply getReply() {
+        return reply;
+    }
+
+    /**
+     * Returns the parameters of the error reply, the first of which is the
+     * nickname of the client.
+     *
+     * @return the parameters.
+     */
+    public List<String> getParams() {
+        return params;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import com.github.escortkeel.circle.event.IRCEvent;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class dispatches the events of an
+ * <code>IRCClient</code> on an
+ * <code>Executor</code>, so that slow listeners do not hold up the I/O thread
+ * of the client.
+ *
+ * Each event is dispatched under a key, such as the channel or nickname it
+ * concerns. Events are queued on one of a fixed number of lanes chosen by the
+ * hash of their key, and each lane runs at most one task on the executor at
+ * a time, so events with the same key are delivered in order, one at a time,
+ * while events with different keys are usually delivered in parallel.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+final class IRCDispatcher {
+
+    private static final int LANES = 64;
+    /**
+     * The maximum number of events a lane dispatches before it yields its
+     * thread to the other tasks of the executor.
+     */
+    private static final int BATCH = 64;
+    private final IRCListenerRegistry listeners;
+    private final Executor executor;
+    private final Lane[] lanes = new Lane[LANES];
+
+    IRCDispatcher(IRCListenerRegistry listeners, Executor executor) {
+        this.listeners = listeners;
+        this.executor = executor;
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane();
+        }
+    }
+
+    Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Queues the specified event for dispatch after every event previously
+     * queued under the same key. The key may be <tt>null</tt>.
+     */
+    void dispatch(Object key, IRCEvent event) {
+        int h = key == null ? 0 : key.hashCode();
+        h ^= h >>> 16;
+        Lane lane = lanes[h & (LANES - 1)];
+
+        lane.events.add(event);
+        lane.schedule();
+    }
+
+    /**
+     * This class holds the events queued on a lane, and drains them on the
+     * executor.
+     */
+    private final class Lane implements Runnable {
+
+        private final Queue<IRCEvent> events = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException ex) {
+                    scheduled.set(false);
+                    events.clear();
+                    Logger.getLogger(IRCClient.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            IRCEvent event;
+            for (int i = 0; i < BATCH && (event = events.poll()) != null; i++) {
+                listeners.dispatch(event);
+            }
+
+            scheduled.set(false);
+            if (!events.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+/**
+ * This class describes the rate at which an
+ * <code>IRCClient</code> may send lines to its server. Both a line budget and a
+ * byte budget are modelled as token buckets: each holds at most a burst of
+ * tokens and is refilled at a constant rate, and a line is only sent once
+ * both buckets hold enough tokens to pay for it.
+ *
+ * Protocol replies which must not be delayed, such as the response to a
+ * server <tt>PING</tt>, are sent immediately and paid for afterwards.
+ *
+ * @see IRCClient#setFloodControl
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+public final class IRCFloodControl {
+
+    /**
+     * Flood control which never delays a line.
+     */
+    public static final IRCFloodControl NONE = new IRCFloodControl(0, 0, 0, 0);
+    /**
+     * Flood control matching the algorithm described in section 8.10 of RFC
+     * 1459: a burst of five lines, followed by one line every two seconds.
+     */
+    public static final IRCFloodControl RFC1459 = new IRCFloodControl(5, 0.5, 0, 0);
+    private final int burstLines;
+    private final double linesPerSecond;
+    private final int burstBytes;
+    private final double bytesPerSecond;
+
+    /**
+     * Constructs a new
+     * <code>IRCFloodControl</code> with the specified budgets. A budget with a
+     * rate of zero is unlimited.
+     *
+     * @param burstLines the number of lines which may be sent at once.
+     * @param linesPerSecond the sustained number of lines sent per second.
+     * @param burstBytes the number of bytes which may be sent at once.
+     * @param bytesPerSecond the sustained number of bytes sent per second.
+     *
+     * @throws IllegalArgumentException if a budget is negative, or if a
+     * limited budget cannot fit a single line
+     */
+    public IRCFloodControl(int burstLines, double linesPerSecond, int burstBytes, double bytesPerSecond) {
+        if (burstLines < 0 || linesPerSecond < 0 || burstBytes < 0 || bytesPerSecond < 0) {
+            throw new IllegalArgumentException("Budgets must not be negative");
+        }
+
+        if (linesPerSecond > 0 && burstLines < 1) {
+            throw new IllegalArgumentException("Line burst must be at least one line");
+        }
+
+        if (bytesPerSecond > 0 && burstBytes < 512) {
+            throw new IllegalArgumentException("Byte burst must be at least 512 bytes");
+        }
+
+        this.burstLines = burstLines;
+        this.linesPerSecond = linesPerSecond;
+        this.burstBytes = burstBytes;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Returns the number of lines which may be sent at once.
+     *
+     * @return the line burst.
+     */
+    public int getBurstLines() {
+        return burstLines;
+    }
+
+    /**
+     * Returns the sustained number of lines sent per second, or zero if the
+     * number of lines is unlimited.
+     *
+     * @return the line rate.
+     */
+    public double getLinesPerSecond() {
+        return linesPerSecond;
+    }
+
+    /**
+     * Returns the number of bytes which may be sent at once.
+     *
+     * @return the byte burst.
+     */
+    public int getBurstBytes() {
+        return burstBytes;
+    }
+
+    /**
+     * Returns the sustained number of bytes sent per second, or zero if the
+     * number of bytes is unlimited.
+     *
+     * @return the byte rate.
+     */
+    public double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Returns whether this
+     * <code>IRCFloodControl</code> never delays a line.
+     *
+     * @return true if both budgets are unlimited.
+     */
+    public boolean isUnlimited() {
+        return linesPerSecond == 0 && bytesPerSecond == 0;
+    }
+}
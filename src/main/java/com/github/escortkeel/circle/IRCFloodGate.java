@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class holds the token buckets described by an
+ * <code>IRCFloodControl</code>. It is only used by the thread which currently
+ * owns the write path of a client.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+final class IRCFloodGate {
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private final IRCFloodControl control;
+    private final double linesPerNano;
+    private final double bytesPerNano;
+    private double lines;
+    private double bytes;
+    private long last;
+
+    IRCFloodGate(IRCFloodControl control, long now) {
+        this.control = control;
+        this.linesPerNano = control.getLinesPerSecond() / NANOS_PER_SECOND;
+        this.bytesPerNano = control.getBytesPerSecond() / NANOS_PER_SECOND;
+        this.lines = control.getBurstLines();
+        this.bytes = control.getBurstBytes();
+        this.last = now;
+    }
+
+    IRCFloodControl getControl() {
+        return control;
+    }
+
+    /**
+     * Returns the number of nanoseconds until a line of the specified length
+     * may be sent, or zero if it may be sent now.
+     */
+    long delay(int length, long now) {
+        refill(now);
+
+        double wait = 0;
+        if (linesPerNano > 0 && lines < 1) {
+            wait = (1 - lines) / linesPerNano;
+        }
+        if (bytesPerNano > 0 && bytes < length) {
+            wait = Math.max(wait, (length - bytes) / bytesPerNano);
+        }
+        return (long) Math.ceil(wait);
+    }
+
+    /**
+     * Pays for a line of the specified length. The buckets may go into debt,
+     * which delays the lines which follow.
+     */
+    void take(int length) {
+        lines -= 1;
+        bytes -= length;
+    }
+
+    private void refill(long now) {
+        long elapsed = now - last;
+        last = now;
+
+        lines = Math.min(control.getBurstLines(), lines + elapsed * linesPerNano);
+        bytes = Math.min(control.getBurstBytes(), bytes + elapsed * bytesPerNano);
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class represents the result of an operation performed asynchronously
+ * by an
+ * <code>IRCClient</code>, such as sending a line. The result may be waited
+ * for, or listeners may be added which are invoked once it is available.
+ *
+ * Listeners are invoked by the thread which completes the operation, which is
+ * usually the I/O thread of the client, so they should not block; a listener
+ * added to a future which has already completed is invoked immediately by
+ * the thread adding it. Many futures may be awaited together with
+ * <code>allOf()</code>.
+ *
+ * @param <T> the type of the result.
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+public final class IRCFuture<T> implements Future<T> {
+
+    /**
+     * This interface is implemented by objects which are notified when an
+     * <code>IRCFuture</code> completes.
+     *
+     * @param <T> the type of the result.
+     */
+    public interface Listener<T> {
+
+        /**
+         * Invoked when the specified future has completed, successfully or
+         * not.
+         *
+         * @param future the future.
+         */
+        void completed(IRCFuture<T> future);
+    }
+    private boolean done = false;
+    private boolean cancelled = false;
+    private T value;
+    private Throwable failure;
+    private List<Listener<T>> listeners;
+
+    IRCFuture() {
+    }
+
+    /**
+     * Returns a future which completes once all of the specified futures have
+     * completed. It succeeds if they all succeed, and otherwise fails with
+     * the failure of the first of them to fail.
+     *
+     * @param futures the futures.
+     * @return a future which completes with <tt>null</tt>.
+     */
+    public static IRCFuture<Void> allOf(IRCFuture<?>... futures) {
+        return allOf(Arrays.asList(futures));
+    }
+
+    /**
+     * Returns a future which completes once all of the specified futures have
+     * completed. It succeeds if they all succeed, and otherwise fails with
+     * the failure of the first of them to fail.
+     *
+     * @param futures the futures.
+     * @return a future which completes with <tt>null</tt>.
+     */
+    public static IRCFuture<Void> allOf(Collection<? extends IRCFuture<?>> futures) {
+        List<IRCFuture<?>> waiting = new ArrayList<>(futures);
+        IRCFuture<Void> all = new IRCFuture<>();
+        if (waiting.isEmpty()) {
+            all.complete(null);
+            return all;
+        }
+
+        AtomicInteger remaining = new AtomicInteger(waiting.size());
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (IRCFuture<?> future : waiting) {
+            countDown(future, all, remaining, failure);
+        }
+        return all;
+    }
+
+    private static <T> void countDown(IRCFuture<T> future, final IRCFuture<Void> all, final AtomicInteger remaining, final AtomicReference<Throwable> failure) {
+        future.addListener(new Listener<T>() {
+            @Override
+            public void completed(IRCFuture<T> future) {
+                Throwable cause = future.getFailure();
+                if (cause != null) {
+                    failure.compareAndSet(null, cause);
+                }
+
+                if (remaining.decrementAndGet() == 0) {
+                    if (failure.get() == null) {
+                        all.complete(null);
+                    } else {
+                        all.fail(failure.get());
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Adds a listener which is invoked once this future completes.
+     *
+     * @param listener the listener.
+     */
+    public void addListener(Listener<T> listener) {
+        synchronized (this) {
+            if (!done) {
+                if (listeners == null) {
+                    listeners = new ArrayList<>(1);
+                }
+                listeners.add(listener);
+                return;
+            }
+        }
+        invoke(listener);
+    }
+
+    /**
+     * Returns whether this future completed successfully.
+     *
+     * @return true if the operation succeeded.
+     */
+    public synchronized boolean isSuccess() {
+        return done && failure == null;
+    }
+
+    /**
+     * Returns the reason this future failed, or <tt>null</tt> if it has not
+     * failed.
+     *
+     * @return the failure, or <tt>null</tt>.
+     */
+    public synchronized Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * Fails this future with a
+     * <code>CancellationException</code>, if it has not yet completed. The
+     * operation itself is not undone.
+     *
+     * @param mayInterruptIfRunning ignored.
+     * @return true if this future was cancelled.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        List<Listener<T>> toNotify;
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            // Marked cancelled and failed at once, so that a concurrent
+            // completion either wins outright or loses outright.
+            cancelled = true;
+            failure = new CancellationException();
+            toNotify = finish();
+        }
+        invokeAll(toNotify);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (!done) {
+            wait();
+        }
+        return result();
+    }
+
+    @Override
+    public synchronized T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!done) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return result();
+    }
+
+    /**
+     * Completes this future with the specified value, if it has not yet
+     * completed.
+     *
+     * @return true if this future was completed.
+     */
+    boolean complete(T value) {
+        List<Listener<T>> toNotify;
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            this.value = value;
+            toNotify = finish();
+        }
+        invokeAll(toNotify);
+        return true;
+    }
+
+    /**
+     * Fails this future with the specified exception, if it has not yet
+     * completed.
+     *
+     * @return true if this future was failed.
+     */
+    boolean fail(Throwable failure) {
+        List<Listener<T>> toNotify;
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            this.failure = failure;
+            toNotify = finish();
+        }
+        invokeAll(toNotify);
+        return true;
+    }
+
+    private List<Listener<T>> finish() {
+        done = true;
+        notifyAll();
+
+        List<Listener<T>> toNotify = listeners;
+        listeners = null;
+        return toNotify;
+    }
+
+    private T result() throws ExecutionException {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+        return value;
+    }
+
+    private void invokeAll(List<Listener<T>> toNotify) {
+        if (toNotify != null) {
+            for (Listener<T> listener : toNotify) {
+                invoke(listener);
+            }
+        }
+    }
+
+    private void invoke(Listener<T> listener) {
+        try {
+            listener.completed(this);
+        } catch (RuntimeException ex) {
+            Logger.getLogger(IRCClient.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+/**
+ * This class represents a nickname or channel name as a key, which is equal
+ * to any other key for the same name under the case mapping of the server.
+ * Keys are obtained from
+ * <code>IRCClient.getKey</code>, which interns them, so that looking up the
+ * same name again yields the same key and keys for names which differ only
+ * in case share their folded form.
+ *
+ * The folded form and its hash are computed once, when the key is created,
+ * so keys may be compared and hashed repeatedly at no further cost.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+public final class IRCKey {
+
+    private final String name;
+    private final String folded;
+    private final int hash;
+
+    IRCKey(String name, String folded) {
+        this.name = name;
+        this.folded = folded;
+        this.hash = folded.hashCode();
+    }
+
+    /**
+     * Returns the name this key was created from, in its original case.
+     *
+     * @return the name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the name this key was created from, folded to lower case by the
+     * case mapping of the server.
+     *
+     * @return the folded name.
+     */
+    public String getFolded() {
+        return folded;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof IRCKey)) {
+            return false;
+        }
+
+        IRCKey other = (IRCKey) o;
+        return hash == other.hash && (folded == other.folded || folded.equals(other.folded));
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class interns the
+ * <code>IRCKey</code>s of an
+ * <code>IRCClient</code>. Each distinct name maps to one key, and each
+ * distinct folded form to one string, so that equal keys are usually
+ * identical or share their folded form, and compare by reference.
+ *
+ * The tables are bounded by twice the number of names the client tracks, or
+ * <tt>MIN_KEYS</tt> if that is greater, so that every member of the channels
+ * of the client fits. They evict by generation rather than all at once: only
+ * the names which have not been used for a whole generation are forgotten,
+ * after which they are still equal by value to the keys created before.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+final class IRCKeyTable {
+
+    /**
+     * This interface is implemented by the holder of most of the interned
+     * keys, by which the tables are sized.
+     */
+    interface Usage {
+
+        /**
+         * Returns the number of names currently held. It may be called by
+         * any thread.
+         */
+        int getNameCount();
+    }
+    /**
+     * The minimum number of names interned in each generation.
+     */
+    private static final int MIN_KEYS = 4096;
+    private final Table<IRCKey> keys = new Table<>();
+    private final Table<String> folds = new Table<>();
+    private volatile IRCCaseMapping mapping = IRCCaseMapping.RFC1459;
+    private volatile Usage usage;
+
+    IRCCaseMapping getCaseMapping() {
+        return mapping;
+    }
+
+    /**
+     * Sets the case mapping, and forgets every interned key.
+     */
+    void setCaseMapping(IRCCaseMapping mapping) {
+        this.mapping = mapping;
+        keys.clear();
+        folds.clear();
+    }
+
+    void setUsage(Usage usage) {
+        this.usage = usage;
+    }
+
+    /**
+     * Returns the interned key for the specified name.
+     */
+    IRCKey key(String name) {
+        IRCKey key = keys.get(name);
+        if (key != null) {
+            return key;
+        }
+
+        String folded = mapping.fold(name);
+        String canonical = folds.get(folded);
+        if (canonical == null) {
+            folds.put(folded, folded);
+            canonical = folded;
+        }
+
+        key = new IRCKey(name, canonical);
+        keys.put(name, key);
+        return key;
+    }
+
+    /**
+     * Returns a key for the specified name without interning it, for
+     * one-off lookups.
+     */
+    IRCKey lookup(String name) {
+        IRCKey key = keys.get(name);
+        if (key != null) {
+            return key;
+        }
+
+        return new IRCKey(name, mapping.fold(name));
+    }
+
+    /**
+     * Returns whether the specified names are equal under the case mapping.
+     */
+    boolean equals(String a, String b) {
+        if (a.length() != b.length()) {
+            return false;
+        }
+
+        IRCCaseMapping m = mapping;
+        for (int i = 0; i < a.length(); i++) {
+            if (m.fold(a.charAt(i)) != m.fold(b.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of names a generation may hold.
+     */
+    private int limit() {
+        Usage u = usage;
+        return u == null ? MIN_KEYS : Math.max(MIN_KEYS, 2 * u.getNameCount());
+    }
+
+    /**
+     * This class maps names to interned values in two generations. Entries
+     * are added to the young generation; when it fills up, the old
+     * generation is dropped and the young one takes its place. An entry found
+     * in the old generation is copied back into the young one, so that the
+     * entries in use survive.
+     */
+    private final class Table<V> {
+
+        private volatile Map<String, V> young = new ConcurrentHashMap<>();
+        private volatile Map<String, V> old = new ConcurrentHashMap<>();
+        private volatile int limit = MIN_KEYS;
+
+        V get(String name) {
+            V value = young.get(name);
+            if (value == null) {
+                value = old.get(name);
+                if (value != null) {
+                    put(name, value);
+                }
+            }
+            return value;
+        }
+
+        void put(String name, V value) {
+            Map<String, V> y = young;
+            if (y.size() >= limit) {
+                // The limit follows the names held, so it is only checked
+                // again once the generation fills up.
+                limit = limit();
+                if (y.size() >= limit) {
+                    synchronized (this) {
+                        if (young == y) {
+                            old = y;
+                            young = new ConcurrentHashMap<>();
+                        }
+                    }
+                    y = young;
+                }
+            }
+            y.put(name, value);
+        }
+
+        synchronized void clear() {
+            young = new ConcurrentHashMap<>();
+            old = new ConcurrentHashMap<>();
+        }
+    }
+}
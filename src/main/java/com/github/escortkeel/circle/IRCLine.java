@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.nio.charset.Charset;
+
+/**
+ * This class represents a single line waiting to be sent by an
+ * <code>IRCClient</code>. A line is held as the parts which make it up, such
+ * as a command, its target and its text, and is only encoded, by an
+ * <code>IRCLineEncoder</code>, when it is written.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+final class IRCLine {
+
+    /**
+     * The maximum length of a line in bytes, excluding its terminator.
+     */
+    static final int MAX_LENGTH = 510;
+    private final String[] parts;
+    private final Charset charset;
+    private final int size;
+    private final IRCFuture<Void> future;
+    private String raw;
+    private long sequence;
+
+    IRCLine(String raw, Charset charset) {
+        this(raw, charset, null);
+    }
+
+    /**
+     * Constructs a new
+     * <code>IRCLine</code> which completes the specified future, if any, once
+     * it has been written.
+     */
+    IRCLine(String raw, Charset charset, IRCFuture<Void> future) {
+        this(charset, future, raw);
+    }
+
+    /**
+     * Constructs a new
+     * <code>IRCLine</code> made up of the specified parts, which completes the
+     * specified future, if any, once it has been written. The first part must
+     * hold the whole of the command and the space after it, if any.
+     */
+    IRCLine(Charset charset, IRCFuture<Void> future, String... parts) {
+        this.parts = parts;
+        this.charset = charset;
+        this.future = future;
+
+        int length = 2;
+        for (String part : parts) {
+            length += length(part, charset);
+        }
+        this.size = length;
+    }
+
+    /**
+     * Returns the number of bytes the specified text occupies when encoded
+     * with the specified charset.
+     */
+    static int length(String text, Charset charset) {
+        if (charset.equals(IRCCodec.UTF_8)) {
+            int length = text.length();
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c >= 0x80) {
+                    if (c < 0x800) {
+                        length++;
+                    } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                        // Four bytes for the two chars.
+                        length += 2;
+                        i++;
+                    } else {
+                        length += 2;
+                    }
+                }
+            }
+            return length;
+        }
+        if (charset.equals(IRCCodec.ISO_8859_1)) {
+            return text.length();
+        }
+        return text.getBytes(charset).length;
+    }
+
+    /**
+     * Returns the line, excluding its terminator.
+     */
+    String getRaw() {
+        String line = raw;
+        if (line == null) {
+            if (parts.length == 1) {
+                line = parts[0];
+            } else {
+                StringBuilder sb = new StringBuilder(size);
+                for (String part : parts) {
+                    sb.append(part);
+                }
+                line = sb.toString();
+            }
+            raw = line;
+        }
+        return line;
+    }
+
+    /**
+     * Returns whether the line starts with the specified command, followed
+     * by a space. Unlike
+     * <code>getRaw()</code>, this never joins the parts of the line.
+     */
+    boolean isCommand(String command) {
+        String first = parts[0];
+        return first.length() > command.length()
+                && first.charAt(command.length()) == ' '
+                && first.regionMatches(true, 0, command, 0, command.length());
+    }
+
+    /**
+     * Returns the parts which make up the line, excluding its terminator.
+     */
+    String[] getParts() {
+        return parts;
+    }
+
+    /**
+     * Returns the charset the line is encoded with.
+     */
+    Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Returns the number of bytes of the encoded line, including its
+     * terminator.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the future completed once this line has been written, or
+     * <tt>null</tt> if there is none.
+     */
+    IRCFuture<Void> getFuture() {
+        return future;
+    }
+
+    /**
+     * Returns the position of the line in the order in which lines were
+     * queued.
+     */
+    long getSequence() {
+        return sequence;
+    }
+
+    void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class encodes the lines written by an
+ * <code>IRCClient</code>, part by part, straight into the buffer they are
+ * written from, so that no intermediate string or byte array is built for
+ * each line. UTF-8 is encoded directly; other charsets use an encoder which
+ * is kept for reuse.
+ *
+ * Unencodable characters are replaced, as by
+ * <code>String.getBytes()</code>. An encoder is only used by the thread which
+ * owns the write path of its client.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+final class IRCLineEncoder {
+
+    private final Map<Charset, CharsetEncoder> encoders = new HashMap<>();
+
+    /**
+     * Encodes the specified line, followed by its terminator, into the
+     * specified buffer, which must have room for the size of the line.
+     */
+    void encode(IRCLine line, ByteBuffer dst) {
+        Charset charset = line.getCharset();
+        if (charset.equals(IRCCodec.UTF_8)) {
+            for (String part : line.getParts()) {
+                encodeUtf8(part, dst);
+            }
+        } else if (charset.equals(IRCCodec.ISO_8859_1)) {
+            for (String part : line.getParts()) {
+                encodeLatin1(part, dst);
+            }
+        } else {
+            CharsetEncoder encoder = encoder(charset);
+            for (String part : line.getParts()) {
+                encoder.reset();
+                CoderResult result = encoder.encode(CharBuffer.wrap(part), dst, true);
+                if (result.isUnderflow()) {
+                    result = encoder.flush(dst);
+                }
+                if (!result.isUnderflow()) {
+                    throw new BufferOverflowException();
+                }
+            }
+        }
+        dst.put((byte) '\r').put((byte) '\n');
+    }
+
+    private CharsetEncoder encoder(Charset charset) {
+        CharsetEncoder encoder = encoders.get(charset);
+        if (encoder == null) {
+            encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            encoders.put(charset, encoder);
+        }
+        return encoder;
+    }
+
+    private static void encodeUtf8(String text, ByteBuffer dst) {
+        int i = 0;
+        if (dst.hasArray()) {
+            // Copy the leading ASCII straight into the array, which is most
+            // lines in their entirety.
+            byte[] array = dst.array();
+            int base = dst.arrayOffset() + dst.position();
+            int end = Math.min(text.length(), dst.remaining());
+            while (i < end) {
+                char c = text.charAt(i);
+                if (c >= 0x80) {
+                    break;
+                }
+                array[base + i++] = (byte) c;
+            }
+            dst.position(dst.position() + i);
+        }
+
+        for (; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                dst.put((byte) c);
+            } else if (c < 0x800) {
+                dst.put((byte) (0xC0 | c >> 6));
+                dst.put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, text.charAt(++i));
+                    dst.put((byte) (0xF0 | cp >> 18));
+                    dst.put((byte) (0x80 | cp >> 12 & 0x3F));
+                    dst.put((byte) (0x80 | cp >> 6 & 0x3F));
+                    dst.put((byte) (0x80 | cp & 0x3F));
+                } else {
+                    dst.put((byte) '?');
+                }
+            } else {
+                dst.put((byte) (0xE0 | c >> 12));
+                dst.put((byte) (0x80 | c >> 6 & 0x3F));
+                dst.put((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+
+    private static void encodeLatin1(String text, ByteBuffer dst) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x100) {
+                dst.put((byte) c);
+            } else {
+                if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    i++;
+                }
+                dst.put((byte) '?');
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class splits the bytes received from an IRC server into lines. Bytes
+ * are read directly into the buffer owned by the framer, which is scanned in
+ * place for line terminators. Partial lines are compacted to the start of the
+ * buffer and completed by subsequent reads.
+ *
+ * Lines are terminated by either CR-LF or a lone LF, and are passed to the
+ * handler without their terminator. The slice passed to the handler is only
+ * valid for the duration of the call.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+final class IRCLineFramer {
+
+    /**
+     * This interface is implemented by receivers of framed lines.
+     */
+    interface Handler {
+
+        void line(byte[] buf, int off, int len);
+    }
+    private final ByteBuffer buffer;
+    private final byte[] array;
+    private int scanned = 0;
+    private boolean discarding = false;
+
+    /**
+     * Constructs a new
+     * <code>IRCLineFramer</code> able to hold a line of up to the specified
+     * number of bytes. Longer lines are discarded.
+     */
+    IRCLineFramer(int capacity) {
+        this.buffer = ByteBuffer.allocate(capacity);
+        this.array = buffer.array();
+    }
+
+    /**
+     * Returns the buffer into which received bytes should be read.
+     *
+     * @return the receive buffer.
+     */
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * Discards any partially received line.
+     */
+    void reset() {
+        buffer.clear();
+        scanned = 0;
+        discarding = false;
+    }
+
+    /**
+     * Passes every complete line in the receive buffer to the specified
+     * handler, then compacts the remaining partial line (if any) to the start
+     * of the buffer.
+     *
+     * @param handler the line handler.
+     */
+    void frame(Handler handler) {
+        int end = buffer.position();
+        int start = 0;
+
+        for (int i = scanned; i < end; i++) {
+            if (array[i] == '\n') {
+                int len = i - start;
+                if (len > 0 && array[i - 1] == '\r') {
+                    len--;
+                }
+
+                if (discarding) {
+                    discarding = false;
+                } else if (len > 0) {
+                    handler.line(array, start, len);
+                }
+                start = i + 1;
+            }
+        }
+
+        if (start == 0 && end == array.length) {
+            // The line is longer than the buffer, so drop it up to the next
+            // terminator rather than deliver it truncated.
+            discarding = true;
+            start = end;
+        }
+
+        int remaining = end - start;
+        if (start != 0 && remaining != 0) {
+            System.arraycopy(array, start, array, 0, remaining);
+        }
+        buffer.clear();
+        buffer.position(remaining);
+        scanned = remaining;
+    }
+}
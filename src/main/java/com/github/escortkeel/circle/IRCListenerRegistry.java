@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import com.github.escortkeel.circle.event.IRCEvent;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class holds the listeners registered with an
+ * <code>IRCClient</code>. Listeners may be added and removed at any time;
+ * dispatch reads an immutable snapshot and never blocks.
+ *
+ * The listeners for each concrete event class are resolved once, on first
+ * dispatch, and cached until the registered listeners change. Adapters are
+ * only registered for the events whose methods they override.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+final class IRCListenerRegistry {
+
+    private static final IRCListener<?>[] NONE = new IRCListener<?>[0];
+    private final Object lock = new Object();
+    private final Map<Class<?>, List<IRCListener<?>>> registered = new HashMap<>();
+    private final Map<IRCAdapter, List<IRCAdapterListener<?>>> adapters = new IdentityHashMap<>();
+    private volatile Map<Class<?>, IRCListener<?>[]> resolved = Collections.emptyMap();
+
+    /**
+     * Registers the specified listener for the specified event type.
+     */
+    <E extends IRCEvent> void add(Class<E> type, IRCListener<? super E> listener) {
+        synchronized (lock) {
+            List<IRCListener<?>> list = registered.get(type);
+            if (list == null) {
+                list = new ArrayList<>();
+                registered.put(type, list);
+            }
+            list.add(listener);
+
+            resolved = Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Unregisters the specified listener from the specified event type.
+     *
+     * @return true if the listener was registered.
+     */
+    <E extends IRCEvent> boolean remove(Class<E> type, IRCListener<? super E> listener) {
+        synchronized (lock) {
+            List<IRCListener<?>> list = registered.get(type);
+            if (list == null || !list.remove(listener)) {
+                return false;
+            }
+            if (list.isEmpty()) {
+                registered.remove(type);
+            }
+
+            resolved = Collections.emptyMap();
+            return true;
+        }
+    }
+
+    /**
+     * Registers a listener invoking the corresponding method of the specified
+     * adapter for every event type.
+     */
+    void addAdapter(IRCAdapter adapter) {
+        synchronized (lock) {
+            List<IRCAdapterListener<?>> bridges = IRCAdapterListener.forAdapter(adapter);
+            List<IRCAdapterListener<?>> existing = adapters.get(adapter);
+            if (existing == null) {
+                adapters.put(adapter, bridges);
+            } else {
+                existing.addAll(bridges);
+            }
+
+            for (IRCAdapterListener<?> bridge : bridges) {
+                add(bridge);
+            }
+        }
+    }
+
+    /**
+     * Unregisters every listener registered on behalf of the specified
+     * adapter.
+     *
+     * @return true if the adapter was registered.
+     */
+    boolean removeAdapter(IRCAdapter adapter) {
+        synchronized (lock) {
+            List<IRCAdapterListener<?>> bridges = adapters.remove(adapter);
+            if (bridges == null) {
+                return false;
+            }
+
+            for (IRCAdapterListener<?> bridge : bridges) {
+                remove(bridge);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Returns whether any listener would be invoked for an event of the
+     * specified class, so that callers may skip building events nobody
+     * handles.
+     */
+    boolean hasListeners(Class<? extends IRCEvent> type) {
+        IRCListener<?>[] listeners = resolved.get(type);
+        if (listeners == null) {
+            listeners = resolve(type);
+        }
+        return listeners.length != 0;
+    }
+
+    /**
+     * Invokes every listener registered for the class of the specified event
+     * or any of its superclasses.
+     */
+    @SuppressWarnings("unchecked")
+    void dispatch(IRCEvent event) {
+        IRCListener<?>[] listeners = resolved.get(event.getClass());
+        if (listeners == null) {
+            listeners = resolve(event.getClass());
+        }
+
+        for (IRCListener<?> listener : listeners) {
+            try {
+                ((IRCListener<IRCEvent>) listener).onEvent(event);
+            } catch (RuntimeException ex) {
+                Logger.getLogger(IRCClient.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+
+    private <E extends IRCEvent> void add(IRCAdapterListener<E> bridge) {
+        add(bridge.getType(), bridge);
+    }
+
+    private <E extends IRCEvent> void remove(IRCAdapterListener<E> bridge) {
+        remove(bridge.getType(), bridge);
+    }
+
+    private IRCListener<?>[] resolve(Class<?> type) {
+        synchronized (lock) {
+            IRCListener<?>[] listeners = resolved.get(type);
+            if (listeners != null) {
+                return listeners;
+            }
+
+            List<IRCListener<?>> list = new ArrayList<>();
+            for (Class<?> c = type; c != null && IRCEvent.class.isAssignableFrom(c); c = c.getSuperclass()) {
+                List<IRCListener<?>> forClass = registered.get(c);
+                if (forClass != null) {
+                    list.addAll(forClass);
+                }
+            }
+            listeners = list.isEmpty() ? NONE : list.toArray(new IRCListener<?>[list.size()]);
+
+            Map<Class<?>, IRCListener<?>[]> next = new HashMap<>(resolved);
+            next.put(type, listeners);
+            resolved = next;
+
+            return listeners;
+        }
+    }
+}
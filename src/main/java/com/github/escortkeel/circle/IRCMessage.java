@@ -0,0 +1,504 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class is a reusable view of a single IRC message held in a byte
+ * buffer. Parsing a line only records the offsets of its prefix, command and
+ * parameters; each field is decoded the first time it is requested.
+ * A leading section of IRCv3 tags is only recorded while parsing; it is
+ * copied out when the tags are requested, and its <tt>batch</tt> tag may be
+ * looked up in place.
+ *
+ * An
+ * <code>IRCMessage</code> is only valid until the next call to
+ * <code>parse()</code>, and must not be retained or shared between threads.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+final class IRCMessage {
+
+    /**
+     * The maximum number of parameters permitted by RFC 2812.
+     */
+    static final int MAX_PARAMS = 15;
+    private static final String[] COMMANDS = {
+        "PING", "PONG", "JOIN", "PART", "KICK", "PRIVMSG", "NOTICE", "QUIT",
+        "ERROR", "NICK", "MODE", "TOPIC", "INVITE", "KILL", "CAP", "BATCH",
+        "AWAY", "ACCOUNT", "CHGHOST", "AUTHENTICATE"
+    };
+    private static final byte[][] COMMAND_BYTES = new byte[COMMANDS.length][];
+
+    static {
+        for (int i = 0; i < COMMANDS.length; i++) {
+            COMMAND_BYTES[i] = COMMANDS[i].getBytes(IRCCodec.ISO_8859_1);
+        }
+    }
+    private final IRCCodec codec;
+    private final IRCUserCache users;
+    private final int[] paramStart = new int[MAX_PARAMS];
+    private final int[] paramEnd = new int[MAX_PARAMS];
+    private final String[] params = new String[MAX_PARAMS];
+    private byte[] buf;
+    private int start;
+    private int end;
+    private int tagsStart;
+    private int tagsEnd;
+    private int prefixStart;
+    private int prefixEnd;
+    private int commandStart;
+    private int commandEnd;
+    private int bodyStart;
+    private int argsStart;
+    private int paramCount;
+    private int numeric;
+    private String command;
+    private String prefix;
+    private IRCUser source;
+    private IRCMessageTags tags;
+    private String body;
+    private String args;
+
+    private String target;
+    private boolean targetResolved;
+
+    /**
+     * Constructs a new
+     * <code>IRCMessage</code> which decodes its fields using the specified
+     * codec, and takes its sources from the specified cache.
+     */
+    IRCMessage(IRCCodec codec, IRCUserCache users) {
+        this.codec = codec;
+        this.users = users;
+    }
+
+    /**
+     * Parses the specified line, which must not include its terminator.
+     *
+     * @param buf the buffer holding the line.
+     * @param off the offset of the line in the buffer.
+     * @param len the length of the line.
+     * @return true if the line contains a command, false if it is malformed.
+     */
+    boolean parse(byte[] buf, int off, int len) {
+        this.buf = buf;
+        this.start = off;
+        this.end = off + len;
+
+        command = null;
+        prefix = null;
+        source = null;
+        tags = null;
+        body = null;
+        args = null;
+        target = null;
+        targetResolved = false;
+        if (paramCount != 0) {
+            Arrays.fill(params, 0, paramCount, null);
+        }
+        paramCount = 0;
+
+        int i = skipSpaces(off);
+        if (i < end && buf[i] == '@') {
+            tagsStart = i + 1;
+            tagsEnd = indexOfSpace(tagsStart);
+            i = skipSpaces(tagsEnd);
+        } else {
+            tagsStart = -1;
+            tagsEnd = -1;
+        }
+
+        if (i < end && buf[i] == ':') {
+            prefixStart = i + 1;
+            prefixEnd = indexOfSpace(prefixStart);
+            i = skipSpaces(prefixEnd);
+        } else {
+            prefixStart = -1;
+            prefixEnd = -1;
+        }
+
+        bodyStart = i;
+        commandStart = i;
+        commandEnd = indexOfSpace(i);
+        if (commandStart == commandEnd) {
+            return false;
+        }
+        numeric = parseNumeric();
+        if (numeric == -1) {
+            command = lookupCommand();
+        }
+
+        i = commandEnd;
+        argsStart = i < end ? i + 1 : end;
+        while (paramCount < MAX_PARAMS) {
+            i = skipSpaces(i);
+            if (i == end) {
+                break;
+            }
+
+            if (buf[i] == ':' || paramCount == MAX_PARAMS - 1) {
+                if (buf[i] == ':') {
+                    i++;
+                }
+                paramStart[paramCount] = i;
+                paramEnd[paramCount] = end;
+                paramCount++;
+                break;
+            }
+
+            paramStart[paramCount] = i;
+            i = indexOfSpace(i);
+            paramEnd[paramCount] = i;
+            paramCount++;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the tags of this message, which are empty if it has none. The
+     * tags remain valid after the message is reused.
+     *
+     * @return the tags.
+     */
+    IRCMessageTags getTags() {
+        if (tags == null) {
+            if (tagsStart == -1) {
+                tags = IRCMessageTags.EMPTY;
+            } else {
+                tags = new IRCMessageTags(new String(buf, tagsStart, tagsEnd - tagsStart, IRCCodec.UTF_8));
+            }
+        }
+        return tags;
+    }
+
+    /**
+     * Returns the reference of the batch this message belongs to, as given by
+     * its <tt>batch</tt> tag, or <tt>null</tt> if it has none.
+     *
+     * @return the batch reference.
+     */
+    String getBatch() {
+        if (tagsStart == -1) {
+            return null;
+        }
+
+        int i = tagsStart;
+        while (i < tagsEnd) {
+            int keyEnd = i;
+            while (keyEnd < tagsEnd && buf[keyEnd] != '=' && buf[keyEnd] != ';') {
+                keyEnd++;
+            }
+            int tagEnd = keyEnd;
+            while (tagEnd < tagsEnd && buf[tagEnd] != ';') {
+                tagEnd++;
+            }
+
+            if (keyEnd - i == 5 && buf[i] == 'b' && buf[i + 1] == 'a' && buf[i + 2] == 't'
+                    && buf[i + 3] == 'c' && buf[i + 4] == 'h' && keyEnd < tagEnd) {
+                return IRCCodec.decodeAscii(buf, keyEnd + 1, tagEnd);
+            }
+            i = tagEnd + 1;
+        }
+        return null;
+    }
+
+    /**
+     * Returns whether this message has a prefix.
+     *
+     * @return true if the message has a prefix.
+     */
+    boolean hasPrefix() {
+        return prefixStart != -1;
+    }
+
+    /**
+     * Returns the prefix of this message, or <tt>null</tt> if it has none.
+     *
+     * @return the prefix.
+     */
+    String getPrefix() {
+        if (prefix == null && prefixStart != -1) {
+            prefix = codec.decode(buf, prefixStart, prefixEnd, null);
+        }
+        return prefix;
+    }
+
+    /**
+     * Returns an
+     * <code>IRCUser</code> representing the prefix of this message, or
+     * <tt>null</tt> if it has none.
+     *
+     * @return the source of the message.
+     */
+    IRCUser getSource() {
+        if (source == null && prefixStart != -1) {
+            source = users.get(buf, prefixStart, prefixEnd);
+        }
+        return source;
+    }
+
+    /**
+     * Returns the command of this message. Well-known commands are recognised
+     * during parsing and are returned without being decoded.
+     *
+     * @return the command.
+     */
+    String getCommand() {
+        if (command == null) {
+            command = codec.decode(buf, commandStart, commandEnd, null);
+        }
+        return command;
+    }
+
+    /**
+     * Returns whether the command of this message is a three digit numeric
+     * reply.
+     *
+     * @return true if the command is numeric.
+     */
+    boolean isNumeric() {
+        return numeric != -1;
+    }
+
+    /**
+     * Returns the numeric reply code of this message, or -1 if the command is
+     * not numeric.
+     *
+     * @return the reply code.
+     */
+    int getNumeric() {
+        return numeric;
+    }
+
+    /**
+     * Returns the number of parameters of this message.
+     *
+     * @return the number of parameters.
+     */
+    int getParamCount() {
+        return paramCount;
+    }
+
+    /**
+     * Returns the specified parameter of this message, or <tt>null</tt> if
+     * there is no such parameter.
+     *
+     * @param index the index of the parameter.
+     * @return the parameter.
+     */
+    String getParam(int index) {
+        if (index < 0 || index >= paramCount) {
+            return null;
+        }
+
+        if (params[index] == null) {
+            params[index] = decode(paramStart[index], paramEnd[index]);
+        }
+        return params[index];
+    }
+
+    /**
+     * Returns an immutable list of the parameters of this message, which
+     * remains valid after the message is reused.
+     *
+     * @return the parameters.
+     */
+    List<String> getParams() {
+        String[] copy = new String[paramCount];
+        for (int i = 0; i < paramCount; i++) {
+            copy[i] = getParam(i);
+        }
+        return Collections.unmodifiableList(Arrays.asList(copy));
+    }
+
+    /**
+     * Returns the last parameter of this message, or <tt>null</tt> if it has
+     * no parameters.
+     *
+     * @return the last parameter.
+     */
+    String getLastParam() {
+        return getParam(paramCount - 1);
+    }
+
+    /**
+     * Returns whether the specified parameter equals the specified ASCII
+     * string, without decoding the parameter.
+     *
+     * @param index the index of the parameter.
+     * @param value the string to compare against.
+     * @return true if the parameter equals the string.
+     */
+    boolean paramEquals(int index, String value) {
+        if (index < 0 || index >= paramCount) {
+            return false;
+        }
+
+        int off = paramStart[index];
+        int len = paramEnd[index] - off;
+        if (len != value.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < len; i++) {
+            if (buf[off + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the whole message, including its tags and prefix.
+     *
+     * @return the message.
+     */
+    String getLine() {
+        String line = decode(prefixStart != -1 ? prefixStart - 1 : bodyStart, end);
+        if (tagsStart == -1) {
+            return line;
+        }
+        // Tags are always UTF-8, whatever the charset of the rest.
+        return new String(buf, tagsStart - 1, tagsEnd - tagsStart + 1, IRCCodec.UTF_8) + " " + line;
+    }
+
+    /**
+     * Returns the message without its prefix.
+     *
+     * @return the message body.
+     */
+    String getBody() {
+        if (body == null) {
+            body = decode(bodyStart, end);
+        }
+        return body;
+    }
+
+    /**
+     * Returns the unparsed parameters of this message, that is, everything
+     * following the command.
+     *
+     * @return the raw parameters.
+     */
+    String getArgs() {
+        if (args == null) {
+            args = decode(argsStart, end);
+        }
+        return args;
+    }
+
+    /**
+     * Decodes text which may have been written by another user. ASCII text
+     * is decoded directly; otherwise the charset is chosen according to the
+     * channel or user the message concerns.
+     */
+    private String decode(int from, int to) {
+        if (IRCCodec.isAscii(buf, from, to)) {
+            return IRCCodec.decodeAscii(buf, from, to);
+        }
+        return codec.decode(buf, from, to, getTarget());
+    }
+
+    /**
+     * Returns the channel this message was sent to if its first parameter is
+     * a channel, otherwise the nickname of its sender, or <tt>null</tt> if
+     * there is neither.
+     */
+    private String getTarget() {
+        if (!targetResolved) {
+            targetResolved = true;
+
+            if (paramCount != 0 && isChannelPrefix(buf[paramStart[0]])) {
+                target = codec.decode(buf, paramStart[0], paramEnd[0], null);
+            } else if (prefixStart != -1) {
+                int i = prefixStart;
+                while (i < prefixEnd && buf[i] != '!' && buf[i] != '@') {
+                    i++;
+                }
+                target = codec.decode(buf, prefixStart, i, null);
+            }
+        }
+        return target;
+    }
+
+    private static boolean isChannelPrefix(byte b) {
+        return b == '#' || b == '&' || b == '+' || b == '!';
+    }
+
+    private int skipSpaces(int i) {
+        while (i < end && buf[i] == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private int indexOfSpace(int i) {
+        while (i < end && buf[i] != ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private int parseNumeric() {
+        if (commandEnd - commandStart != 3) {
+            return -1;
+        }
+
+        int code = 0;
+        for (int i = commandStart; i < commandEnd; i++) {
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            code = code * 10 + digit;
+        }
+        return code;
+    }
+
+    private String lookupCommand() {
+        int len = commandEnd - commandStart;
+        outer:
+        for (int i = 0; i < COMMAND_BYTES.length; i++) {
+            byte[] name = COMMAND_BYTES[i];
+            if (name.length != len) {
+                continue;
+            }
+
+            for (int j = 0; j < len; j++) {
+                if (buf[commandStart + j] != name[j]) {
+                    continue outer;
+                }
+            }
+            return COMMANDS[i];
+        }
+        return null;
+    }
+}
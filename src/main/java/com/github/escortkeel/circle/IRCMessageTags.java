@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * This class represents the IRCv3 tags of a message, such as
+ * <tt>server-time</tt>, <tt>msgid</tt> and <tt>account</tt>.
+ *
+ * The tags are held as they were received, and are only split and unescaped
+ * when they are looked up. Messages without tags share a single empty
+ * instance, so they pay nothing for tag support.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+public final class IRCMessageTags {
+
+    /**
+     * The tags of a message which has none.
+     */
+    public static final IRCMessageTags EMPTY = new IRCMessageTags("");
+    private final String raw;
+
+    IRCMessageTags(String raw) {
+        this.raw = raw;
+    }
+
+    /**
+     * Returns whether there are no tags.
+     *
+     * @return true if there are no tags.
+     */
+    public boolean isEmpty() {
+        return raw.isEmpty();
+    }
+
+    /**
+     * Returns whether the specified tag is present.
+     *
+     * @param key the key of the tag, including any vendor prefix.
+     * @return true if the tag is present.
+     */
+    public boolean contains(String key) {
+        return indexOf(key) != -1;
+    }
+
+    /**
+     * Returns the unescaped value of the specified tag, which is empty if the
+     * tag has no value, or <tt>null</tt> if the tag is not present.
+     *
+     * @param key the key of the tag, including any vendor prefix.
+     * @return the value, or <tt>null</tt>.
+     */
+    public String get(String key) {
+        int i = indexOf(key);
+        if (i == -1) {
+            return null;
+        }
+
+        i += key.length();
+        if (i == raw.length() || raw.charAt(i) == ';') {
+            return "";
+        }
+        int end = raw.indexOf(';', i + 1);
+        return unescape(raw, i + 1, end == -1 ? raw.length() : end);
+    }
+
+    /**
+     * Returns the time at which the server received the message, as given by
+     * its <tt>server-time</tt> tag, in milliseconds since the epoch, or -1 if
+     * the tag is absent or malformed.
+     *
+     * @return the time, or -1.
+     */
+    public long getServerTime() {
+        String time = get("time");
+        if (time == null || time.length() < 19) {
+            return -1;
+        }
+
+        try {
+            Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+            calendar.clear();
+            calendar.set(Integer.parseInt(time.substring(0, 4)),
+                    Integer.parseInt(time.substring(5, 7)) - 1,
+                    Integer.parseInt(time.substring(8, 10)),
+                    Integer.parseInt(time.substring(11, 13)),
+                    Integer.parseInt(time.substring(14, 16)),
+                    Integer.parseInt(time.substring(17, 19)));
+            long millis = calendar.getTimeInMillis();
+            if (time.length() > 20 && time.charAt(19) == '.') {
+                int end = 20;
+                while (end < time.length() && end < 23 && Character.isDigit(time.charAt(end))) {
+                    end++;
+                }
+                String fraction = (time.substring(20, end) + "00").substring(0, 3);
+                millis += Integer.parseInt(fraction);
+            }
+            return millis;
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the identifier the server assigned to the message, as given by
+     * its <tt>msgid</tt> tag, or <tt>null</tt> if there is none.
+     *
+     * @return the message identifier, or <tt>null</tt>.
+     */
+    public String getMessageId() {
+        return get("msgid");
+    }
+
+    /**
+     * Returns the account of the sender of the message, as given by its
+     * <tt>account</tt> tag, or <tt>null</tt> if there is none.
+     *
+     * @return the account, or <tt>null</tt>.
+     */
+    public String getAccount() {
+        return get("account");
+    }
+
+    /**
+     * Splits and unescapes every tag.
+     *
+     * @return an immutable map of the keys of the tags to their values.
+     */
+    public Map<String, String> asMap() {
+        if (raw.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, String> tags = new HashMap<>();
+        int i = 0;
+        while (i < raw.length()) {
+            int end = raw.indexOf(';', i);
+            if (end == -1) {
+                end = raw.length();
+            }
+            int equals = raw.indexOf('=', i);
+            if (equals == -1 || equals > end) {
+                tags.put(raw.substring(i, end), "");
+            } else {
+                tags.put(raw.substring(i, equals), unescape(raw, equals + 1, end));
+            }
+            i = end + 1;
+        }
+        return Collections.unmodifiableMap(tags);
+    }
+
+    @Override
+    public String toString() {
+        return raw;
+    }
+
+    /**
+     * Returns the index of the specified tag, or -1 if it is not present.
+     */
+    private int indexOf(String key) {
+        int i = 0;
+        while (i < raw.length()) {
+            if (raw.startsWith(key, i)) {
+                int after = i + key.length();
+                if (after == raw.length() || raw.charAt(after) == '=' || raw.charAt(after) == ';') {
+                    return i;
+                }
+            }
+
+            i = raw.indexOf(';', i);
+            if (i == -1) {
+                break;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    private static String unescape(String raw, int from, int to) {
+        int backslash = raw.indexOf('\\', from);
+        if (backslash == -1 || backslash >= to) {
+            return raw.substring(from, to);
+        }
+
+        StringBuilder sb = new StringBuilder(to - from);
+        for (int i = from; i < to; i++) {
+            char c = raw.charAt(i);
+            if (c != '\\') {
+                sb.append(c);
+            } else if (++i < to) {
+                switch (raw.charAt(i)) {
+                    case ':':
+                        sb.append(';');
+                        break;
+                    case 's':
+                        sb.append(' ');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    default:
+                        sb.append(raw.charAt(i));
+                        break;
+                }
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class rewrites the lines waiting in a lane of an
+ * <code>IRCOutboundQueue</code> into an equivalent, shorter sequence:
+ *
+ * <ul>
+ * <li>consecutive <tt>JOIN</tt>s, and consecutive <tt>PART</tt>s, are packed
+ * into as few comma-separated lines as fit within the protocol line length,
+ * each run staying where it arrived;</li>
+ * <li>a <tt>JOIN</tt> followed by a <tt>PART</tt> of the same channel is
+ * dropped, as is the <tt>PART</tt> unless the client was already in or
+ * joining the channel;</li>
+ * <li>a <tt>PART</tt> followed by a <tt>JOIN</tt> of the same channel is
+ * kept, in that order, so that a channel can be cycled;</li>
+ * <li>consecutive <tt>NICK</tt> changes are collapsed into the last one.</li>
+ * </ul>
+ *
+ * Only the plain forms of these commands are rewritten; a <tt>JOIN</tt> with
+ * keys or a <tt>PART</tt> with a reason is left in place, as is any line whose
+ * completion is being waited on, and no line is moved across any other
+ * command.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+final class IRCOutboundOptimizer {
+
+    /**
+     * This interface tells the optimizer which channels the client is in.
+     */
+    interface Membership {
+
+        /**
+         * Returns whether the client is in, or has asked to join, the
+         * specified channel.
+         */
+        boolean isJoinedOrJoining(IRCKey channel);
+
+        /**
+         * Records that a request to join the specified channel has been
+         * sent.
+         */
+        void joining(IRCKey channel);
+    }
+    private final Membership membership;
+    private final IRCCodec codec;
+    private final IRCKeyTable keys;
+    private final Set<IRCKey> joins = new LinkedHashSet<>();
+    private final Set<IRCKey> parts = new LinkedHashSet<>();
+    private final List<IRCLine> out = new ArrayList<>();
+    /**
+     * The sequence number of the first line of the pending <tt>JOIN</tt>s or
+     * <tt>PART</tt>s, which the packed lines take on.
+     */
+    private long sequence;
+
+    IRCOutboundOptimizer(Membership membership, IRCCodec codec, IRCKeyTable keys) {
+        this.membership = membership;
+        this.codec = codec;
+        this.keys = keys;
+    }
+
+    /**
+     * Rewrites the specified lines in place.
+     */
+    void optimize(ArrayDeque<IRCLine> lines) {
+        if (!hasCandidate(lines)) {
+            return;
+        }
+
+        int nickIndex = -1;
+        for (IRCLine line : lines) {
+            String raw = line.getRaw();
+            String[] args = raw.split(" ", 3);
+            String command = args[0].toUpperCase();
+
+            if (line.getFuture() != null) {
+                // Someone is waiting on this very line, so leave it alone.
+                flush();
+                out.add(line);
+            } else if (command.equals("NICK") && args.length == 2) {
+                flush();
+                if (nickIndex != -1 && nickIndex == out.size() - 1) {
+                    // Only a NICK directly following another replaces it, so
+                    // that every other line is sent under the same nickname.
+                    out.set(nickIndex, line);
+                } else {
+                    nickIndex = out.size();
+                    out.add(line);
+                }
+            } else if (command.equals("JOIN") && args.length == 2 && !args[1].equals("0") && !args[1].startsWith(":")) {
+                for (String name : args[1].split(",")) {
+                    if (name.isEmpty()) {
+                        continue;
+                    }
+
+                    if (!parts.isEmpty()) {
+                        // A JOIN may depend on an earlier PART, such as a
+                        // rejoin or one under a channel limit, so the PARTs
+                        // are written out first.
+                        flush();
+                    }
+                    if (joins.isEmpty()) {
+                        sequence = line.getSequence();
+                    }
+                    joins.add(keys.key(name));
+                }
+            } else if (command.equals("PART") && args.length == 2 && !args[1].startsWith(":")) {
+                for (String name : args[1].split(",")) {
+                    if (name.isEmpty()) {
+                        continue;
+                    }
+
+                    IRCKey channel = keys.key(name);
+                    if (!joins.remove(channel) || membership.isJoinedOrJoining(channel)) {
+                        if (!joins.isEmpty()) {
+                            flush();
+                        }
+                        if (parts.isEmpty()) {
+                            sequence = line.getSequence();
+                        }
+                        parts.add(channel);
+                    }
+                }
+            } else {
+                flush();
+                out.add(line);
+            }
+        }
+        flush();
+
+        lines.clear();
+        lines.addAll(out);
+        out.clear();
+    }
+
+    /**
+     * Records the effect of a line which is about to be written.
+     */
+    void sent(IRCLine line) {
+        if (line.isCommand("JOIN")) {
+            String[] args = line.getRaw().split(" ", 3);
+            for (String channel : args[1].split(",")) {
+                if (!channel.isEmpty() && !channel.equals("0")) {
+                    membership.joining(keys.key(channel));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the fewest lines which join the specified channels.
+     */
+    List<IRCLine> joins(Collection<IRCKey> channels) {
+        sequence = 0;
+        joins.addAll(channels);
+        pack("JOIN ", joins);
+
+        List<IRCLine> lines = new ArrayList<>(out);
+        out.clear();
+        return lines;
+    }
+
+    private void flush() {
+        pack("JOIN ", joins);
+        pack("PART ", parts);
+    }
+
+    private void pack(String command, Set<IRCKey> channels) {
+        if (channels.isEmpty()) {
+            return;
+        }
+
+        Charset charset = codec.getCharset();
+        StringBuilder sb = new StringBuilder(command);
+        int length = IRCLine.length(command, charset);
+        for (IRCKey key : channels) {
+            String channel = key.getName();
+            int channelLength = IRCLine.length(channel, charset);
+            if (sb.length() > command.length() && length + 1 + channelLength > IRCLine.MAX_LENGTH) {
+                out.add(packed(sb.toString(), charset));
+                sb.setLength(command.length());
+                length = IRCLine.length(command, charset);
+            }
+
+            if (sb.length() > command.length()) {
+                sb.append(',');
+                length++;
+            }
+            sb.append(channel);
+            length += channelLength;
+        }
+        out.add(packed(sb.toString(), charset));
+
+        channels.clear();
+    }
+
+    private IRCLine packed(String raw, Charset charset) {
+        IRCLine line = new IRCLine(raw, charset);
+        line.setSequence(sequence);
+        return line;
+    }
+
+    private static boolean hasCandidate(ArrayDeque<IRCLine> lines) {
+        int candidates = 0;
+        for (IRCLine line : lines) {
+            if (line.isCommand("JOIN") || line.isCommand("PART") || line.isCommand("NICK")) {
+                if (++candidates == 2) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,453 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class holds the lines waiting to be written by an
+ * <code>IRCClient</code>. Any thread may add lines; only the thread which owns
+ * the write path of the client may drain them.
+ *
+ * Lines are drained in order of priority, subject to the flood control of
+ * the client. Lines below
+ * <code>IRCPriority.HIGH</code> are held until the queue is released, which
+ * happens once the server has welcomed the client. A <tt>PART</tt> or
+ * <tt>QUIT</tt> does not overtake lines of a lower priority which were queued
+ * before it, since those may no longer be sent once it has been. Every line
+ * is paid for out of the flood control budget; only replies to <tt>PING</tt>
+ * and lines sent before the welcome may go into debt rather than wait.
+ *
+ * When a lane is drained, its pending lines are first moved into a staging
+ * area owned by the draining thread, where they are rewritten by an
+ * <code>IRCOutboundOptimizer</code>. Lines held back by flood control stay
+ * staged, so lines which pile up while the client waits are optimized
+ * together.
+ *
+ * The queue counts the bytes of the lines it holds, from when they are added
+ * until they have been written. It becomes unwritable when the count rises
+ * above its high watermark, and writable again once the count falls back to
+ * its low watermark.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+final class IRCOutboundQueue {
+
+    /**
+     * The maximum number of lines staged per lane at once, which bounds the
+     * work done by the optimizer.
+     */
+    private static final int STAGE_LIMIT = 1024;
+    private static final IRCPriority[] PRIORITIES = IRCPriority.values();
+    static final int DEFAULT_LOW_WATERMARK = 32 * 1024;
+    static final int DEFAULT_HIGH_WATERMARK = 64 * 1024;
+    private final Queue<IRCLine>[] lanes;
+    private final ArrayDeque<IRCLine>[] staged;
+    private final IRCOutboundOptimizer optimizer;
+    private volatile boolean released = false;
+    private volatile IRCFloodControl control = IRCFloodControl.RFC1459;
+    private volatile int stagedHigh = 0;
+    private volatile int stagedTotal = 0;
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicBoolean writable = new AtomicBoolean(true);
+    private volatile long lowWatermark = DEFAULT_LOW_WATERMARK;
+    private volatile long highWatermark = DEFAULT_HIGH_WATERMARK;
+    private IRCFloodGate gate;
+    private long delay;
+    private List<IRCLine> restored = Collections.emptyList();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    IRCOutboundQueue(IRCOutboundOptimizer.Membership membership, IRCCodec codec, IRCKeyTable keys) {
+        lanes = new Queue[PRIORITIES.length];
+        staged = new ArrayDeque[PRIORITIES.length];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new ConcurrentLinkedQueue<>();
+            staged[i] = new ArrayDeque<>();
+        }
+        optimizer = new IRCOutboundOptimizer(membership, codec, keys);
+    }
+
+    /**
+     * Adds a line with the specified priority.
+     */
+    void add(IRCLine line, IRCPriority priority) {
+        pending.addAndGet(line.size());
+        line.setSequence(sequence.incrementAndGet());
+        lanes[priority.ordinal()].add(line);
+    }
+
+    /**
+     * Adds the specified lines with the specified priority. The lines are
+     * linked into their lane at once, so no other line is placed between
+     * them.
+     */
+    void addAll(Collection<IRCLine> lines, IRCPriority priority) {
+        pending.addAndGet(size(lines));
+        for (IRCLine line : lines) {
+            line.setSequence(sequence.incrementAndGet());
+        }
+        lanes[priority.ordinal()].addAll(lines);
+    }
+
+    /**
+     * Allows lines below
+     * <code>IRCPriority.HIGH</code> to be drained.
+     */
+    void release() {
+        released = true;
+    }
+
+    /**
+     * Returns the number of bytes held by the queue, including those being
+     * written.
+     */
+    long getPendingBytes() {
+        return pending.get();
+    }
+
+    long getLowWatermark() {
+        return lowWatermark;
+    }
+
+    long getHighWatermark() {
+        return highWatermark;
+    }
+
+    void setWatermarks(long low, long high) {
+        this.lowWatermark = low;
+        this.highWatermark = high;
+    }
+
+    boolean isWritable() {
+        return writable.get();
+    }
+
+    /**
+     * Updates whether the queue is writable, returning 1 if it has just become
+     * writable, -1 if it has just become unwritable, or 0 if it has not
+     * changed. Callers must call this method again after a change, until it
+     * returns 0, so that a change made concurrently is not lost.
+     */
+    int updateWritability() {
+        long bytes = pending.get();
+        if (writable.get()) {
+            if (bytes > highWatermark && writable.compareAndSet(true, false)) {
+                return -1;
+            }
+        } else if (bytes <= lowWatermark && writable.compareAndSet(false, true)) {
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Records that the specified lines, previously drained, are no longer
+     * being written, and completes their futures. If the write failed, the
+     * futures are failed with the specified cause instead.
+     */
+    void written(IRCLine[] lines, int count, Throwable failure) {
+        long bytes = 0;
+        for (int i = 0; i < count; i++) {
+            IRCLine line = lines[i];
+            lines[i] = null;
+            bytes += line.size();
+
+            IRCFuture<Void> future = line.getFuture();
+            if (future == null) {
+                continue;
+            }
+
+            if (failure == null) {
+                future.complete(null);
+            } else {
+                future.fail(failure);
+            }
+        }
+        pending.addAndGet(-bytes);
+    }
+
+    /**
+     * Discards every line, failing their futures with the specified cause.
+     * Only the thread which owns the write path may call this method.
+     */
+    void abandon(Throwable cause) {
+        long bytes = 0;
+        for (int i = 0; i < lanes.length; i++) {
+            IRCLine line;
+            while ((line = staged[i].poll()) != null || (line = lanes[i].poll()) != null) {
+                bytes += line.size();
+
+                IRCFuture<Void> future = line.getFuture();
+                if (future != null) {
+                    future.fail(cause);
+                }
+            }
+        }
+        stagedHigh = 0;
+        stagedTotal = 0;
+        pending.addAndGet(-bytes);
+    }
+
+    /**
+     * Prepares the queue for a new connection: lanes other than the
+     * highest-priority one are held until the queue is released again, the
+     * specified lines are put at the front of the highest-priority lane, and
+     * packed <tt>JOIN</tt>s of the specified channels at the front of the
+     * normal priority lane. Lines put there by a previous call which have not
+     * yet been written are discarded first. Only the thread which owns the
+     * write path may call this method.
+     */
+    void restart(List<IRCLine> high, Collection<IRCKey> channels) {
+        List<IRCLine> normal = channels.isEmpty() ? Collections.<IRCLine>emptyList() : optimizer.joins(channels);
+
+        released = false;
+        gate = null;
+
+        long bytes = 0;
+        for (IRCLine line : restored) {
+            if (staged[IRCPriority.HIGH.ordinal()].remove(line) || staged[IRCPriority.NORMAL.ordinal()].remove(line)) {
+                bytes -= line.size();
+            }
+        }
+        bytes += prepend(IRCPriority.HIGH, high);
+        bytes += prepend(IRCPriority.NORMAL, normal);
+        pending.addAndGet(bytes);
+
+        restored = new ArrayList<>(high.size() + normal.size());
+        restored.addAll(high);
+        restored.addAll(normal);
+
+        int total = 0;
+        for (ArrayDeque<IRCLine> lane : staged) {
+            total += lane.size();
+        }
+        stagedHigh = staged[IRCPriority.HIGH.ordinal()].size();
+        stagedTotal = total;
+    }
+
+    private long prepend(IRCPriority priority, List<IRCLine> lines) {
+        ArrayDeque<IRCLine> stage = staged[priority.ordinal()];
+        for (int i = lines.size() - 1; i >= 0; i--) {
+            stage.addFirst(lines.get(i));
+        }
+        return size(lines);
+    }
+
+    IRCFloodControl getFloodControl() {
+        return control;
+    }
+
+    void setFloodControl(IRCFloodControl control) {
+        this.control = control;
+    }
+
+    /**
+     * Returns whether there are lines which are not held back until the
+     * queue is released.
+     */
+    boolean hasWritable() {
+        if (released) {
+            if (stagedTotal != 0) {
+                return true;
+            }
+        } else if (stagedHigh != 0) {
+            return true;
+        }
+
+        int count = released ? lanes.length : 1;
+        for (int i = 0; i < count; i++) {
+            if (!lanes[i].isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves as many lines as flood control permits into the specified array.
+     * If a line was held back by flood control,
+     * <code>getDelay()</code> subsequently returns the number of nanoseconds
+     * until it may be sent. The lines remain counted by the queue until they
+     * are passed to
+     * <code>written()</code>.
+     *
+     * @return the number of lines moved.
+     */
+    int drain(IRCLine[] into, long now) {
+        IRCFloodGate gate = gate(now);
+        int count = 0;
+        int lanesToDrain = released ? lanes.length : 1;
+
+        delay = 0;
+        try {
+            // The highest lane whose next line waits for earlier lines in the
+            // lanes below it, to which draining returns after each line.
+            int waiting = -1;
+            int i = 0;
+            while (i < lanesToDrain && count < into.length) {
+                ArrayDeque<IRCLine> lane = stage(i);
+                IRCLine line = lane.peek();
+                if (line == null || isBehind(line, i, lanesToDrain)) {
+                    if (line != null && waiting == -1) {
+                        waiting = i;
+                    }
+                    i++;
+                    continue;
+                }
+
+                if (gate != null) {
+                    long wait = gate.delay(line.size(), now);
+                    if (wait > 0 && !isUrgent(line)) {
+                        delay = wait;
+                        return drainUrgent(into, count, gate);
+                    }
+                    gate.take(line.size());
+                }
+
+                optimizer.sent(lane.poll());
+                into[count++] = line;
+                if (waiting != -1) {
+                    i = waiting;
+                    waiting = -1;
+                }
+            }
+            return count;
+        } finally {
+            int total = 0;
+            for (ArrayDeque<IRCLine> lane : staged) {
+                total += lane.size();
+            }
+            stagedHigh = staged[IRCPriority.HIGH.ordinal()].size();
+            stagedTotal = total;
+        }
+    }
+
+    /**
+     * Returns the number of nanoseconds until the line held back by the last
+     * call to
+     * <code>drain()</code> may be sent, or zero if no line was held back.
+     */
+    long getDelay() {
+        return delay;
+    }
+
+    private ArrayDeque<IRCLine> stage(int index) {
+        Queue<IRCLine> lane = lanes[index];
+        ArrayDeque<IRCLine> stage = staged[index];
+
+        boolean changed = false;
+        IRCLine line;
+        while (stage.size() < STAGE_LIMIT && (line = lane.poll()) != null) {
+            stage.add(line);
+            changed = true;
+        }
+
+        if (changed && PRIORITIES[index] != IRCPriority.LOW) {
+            long before = size(stage);
+            optimizer.optimize(stage);
+            pending.addAndGet(size(stage) - before);
+        }
+        return stage;
+    }
+
+    /**
+     * Moves the urgent lines held back behind others in the highest-priority
+     * lane into the specified array, paying for them afterwards.
+     *
+     * @return the number of lines in the array.
+     */
+    private int drainUrgent(IRCLine[] into, int count, IRCFloodGate gate) {
+        Iterator<IRCLine> it = staged[IRCPriority.HIGH.ordinal()].iterator();
+        while (count < into.length && it.hasNext()) {
+            IRCLine line = it.next();
+            if (isUrgent(line)) {
+                it.remove();
+                gate.take(line.size());
+                into[count++] = line;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns whether the specified line, the next in its lane, must wait for
+     * a line queued before it in a lower lane which is being drained.
+     */
+    private boolean isBehind(IRCLine line, int index, int lanesToDrain) {
+        if (index + 1 >= lanesToDrain || !(line.isCommand("PART") || line.isCommand("QUIT") || isBareQuit(line))) {
+            return false;
+        }
+
+        for (int i = index + 1; i < lanesToDrain; i++) {
+            IRCLine head = stage(i).peek();
+            if (head != null && head.getSequence() < line.getSequence()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the specified line may be sent ahead of the flood
+     * control budget, to be paid for afterwards.
+     */
+    private boolean isUrgent(IRCLine line) {
+        return !released || line.isCommand("PONG");
+    }
+
+    private static boolean isBareQuit(IRCLine line) {
+        // "QUIT" and its terminator.
+        return line.size() == 6 && line.getRaw().equalsIgnoreCase("QUIT");
+    }
+
+    private static long size(Collection<IRCLine> lines) {
+        long bytes = 0;
+        for (IRCLine line : lines) {
+            bytes += line.size();
+        }
+        return bytes;
+    }
+
+    private IRCFloodGate gate(long now) {
+        IRCFloodControl current = control;
+        if (current.isUnlimited()) {
+            gate = null;
+        } else if (gate == null || gate.getControl() != current) {
+            gate = new IRCFloodGate(current, now);
+        }
+        return gate;
+    }
+}
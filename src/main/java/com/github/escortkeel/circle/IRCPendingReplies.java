@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class holds the futures of commands which are waiting for a reply from
+ * the server, keyed by the channel or nickname the reply will name. Several
+ * futures may wait on the same key, and are completed together.
+ *
+ * @param <T> the type of the result of the commands.
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+final class IRCPendingReplies<T> {
+
+    private final IRCKeyTable keys;
+    private final Map<IRCKey, List<IRCFuture<T>>> waiting = new HashMap<>();
+
+    IRCPendingReplies(IRCKeyTable keys) {
+        this.keys = keys;
+    }
+
+    /**
+     * Adds a future waiting on the specified key. The future is forgotten
+     * once it completes, whether or not through this object.
+     */
+    void add(final IRCKey key, final IRCFuture<T> future) {
+        synchronized (this) {
+            List<IRCFuture<T>> futures = waiting.get(key);
+            if (futures == null) {
+                futures = new ArrayList<>(1);
+                waiting.put(key, futures);
+            }
+            futures.add(future);
+        }
+
+        future.addListener(new IRCFuture.Listener<T>() {
+            @Override
+            public void completed(IRCFuture<T> future) {
+                remove(key, future);
+            }
+        });
+    }
+
+    /**
+     * Completes every future waiting on the specified key.
+     */
+    void complete(IRCKey key, T value) {
+        for (IRCFuture<T> future : take(key)) {
+            future.complete(value);
+        }
+    }
+
+    /**
+     * Fails every future waiting on the specified key.
+     */
+    void fail(IRCKey key, Throwable cause) {
+        for (IRCFuture<T> future : take(key)) {
+            future.fail(cause);
+        }
+    }
+
+    /**
+     * Fails every future.
+     */
+    void failAll(Throwable cause) {
+        List<IRCFuture<T>> all = new ArrayList<>();
+        synchronized (this) {
+            for (List<IRCFuture<T>> futures : waiting.values()) {
+                all.addAll(futures);
+            }
+            waiting.clear();
+        }
+
+        for (IRCFuture<T> future : all) {
+            future.fail(cause);
+        }
+    }
+
+    /**
+     * Recreates every key after the case mapping has changed. Futures whose
+     * keys become equal are merged, in the order they were added.
+     */
+    synchronized void rekey() {
+        Map<IRCKey, List<IRCFuture<T>>> old = new LinkedHashMap<>(waiting);
+        waiting.clear();
+        for (Map.Entry<IRCKey, List<IRCFuture<T>>> entry : old.entrySet()) {
+            IRCKey key = keys.key(entry.getKey().getName());
+            List<IRCFuture<T>> futures = waiting.get(key);
+            if (futures == null) {
+                waiting.put(key, entry.getValue());
+            } else {
+                futures.addAll(entry.getValue());
+            }
+        }
+    }
+
+    private synchronized List<IRCFuture<T>> take(IRCKey key) {
+        List<IRCFuture<T>> futures = waiting.remove(key);
+        return futures == null ? Collections.<IRCFuture<T>>emptyList() : futures;
+    }
+
+    private synchronized void remove(IRCKey key, IRCFuture<T> future) {
+        List<IRCFuture<T>> futures = waiting.get(key);
+        if (futures == null || !futures.contains(future)) {
+            // The key may have been recreated since the future was added.
+            key = keys.lookup(key.getName());
+            futures = waiting.get(key);
+        }
+        if (futures != null && futures.remove(future) && futures.isEmpty()) {
+            waiting.remove(key);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class carries the bytes of a connection over its socket unchanged.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+final class IRCPlainTransport implements IRCTransport {
+
+    private final AsynchronousSocketChannel channel;
+
+    IRCPlainTransport(AsynchronousSocketChannel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public AsynchronousSocketChannel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public void handshake(CompletionHandler<Void, Void> handler) {
+        handler.completed(null, null);
+    }
+
+    @Override
+    public void read(ByteBuffer dst, CompletionHandler<Integer, Void> handler) {
+        channel.read(dst, null, handler);
+    }
+
+    @Override
+    public void write(ByteBuffer[] srcs, int offset, int length, CompletionHandler<Long, Void> handler) {
+        channel.write(srcs, offset, length, 0, TimeUnit.MILLISECONDS, null, handler);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+/**
+ * This enum represents the priority with which an outbound line is sent.
+ * Lines of a higher priority are written before lines of a lower priority,
+ * except that a <tt>PART</tt> or <tt>QUIT</tt> waits for the lines queued
+ * before it.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+enum IRCPriority {
+
+    /**
+     * Protocol lines which are sent without waiting for the server's welcome,
+     * such as registration, <tt>PONG</tt>, <tt>NICK</tt> and <tt>QUIT</tt>.
+     */
+    HIGH,
+    /**
+     * Commands which change the state of the client, such as <tt>JOIN</tt>
+     * and <tt>PART</tt>.
+     */
+    NORMAL,
+    /**
+     * Bulk traffic, such as <tt>PRIVMSG</tt>.
+     */
+    LOW
+}
@@ -0,0 +1,607 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class aggregates the replies to the <tt>WHOIS</tt> and <tt>WHO</tt>
+ * queries of an
+ * <code>IRCClient</code>. Concurrent queries for the same target share a
+ * single request, and results are cached for a time, until a message shows
+ * that they may have changed.
+ *
+ * The methods which handle replies are only called by the I/O thread of the
+ * client; the others may be called by any thread.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+final class IRCQueries {
+
+    static final long DEFAULT_TTL = TimeUnit.SECONDS.toNanos(60);
+    private static final int MAX_CACHED = 1024;
+    private final IRCKeyTable keys;
+    private final Lookups<IRCWhoisInfo> whois = new Lookups<>();
+    private final Map<IRCKey, List<IRCKey>> whoByNick = new HashMap<>();
+    private final Lookups<List<IRCWhoEntry>> who = new Lookups<List<IRCWhoEntry>>() {
+        @Override
+        void cached(IRCKey mask, List<IRCWhoEntry> value) {
+            for (IRCWhoEntry entry : value) {
+                IRCKey nickname = keys.lookup(entry.getNickname());
+                List<IRCKey> masks = whoByNick.get(nickname);
+                if (masks == null) {
+                    masks = new ArrayList<>(1);
+                    whoByNick.put(nickname, masks);
+                }
+                masks.add(mask);
+            }
+        }
+
+        @Override
+        void uncached(IRCKey mask, List<IRCWhoEntry> value) {
+            for (IRCWhoEntry entry : value) {
+                IRCKey nickname = keys.lookup(entry.getNickname());
+                List<IRCKey> masks = whoByNick.get(nickname);
+                if (masks != null) {
+                    masks.remove(mask);
+                    if (masks.isEmpty()) {
+                        whoByNick.remove(nickname);
+                    }
+                }
+            }
+        }
+    };
+    private final Map<IRCKey, Whois> building = new HashMap<>();
+    private final ArrayDeque<IRCKey> whoOrder = new ArrayDeque<>();
+    private final List<IRCWhoEntry> rows = new ArrayList<>();
+    private volatile long ttl = DEFAULT_TTL;
+
+    IRCQueries(IRCKeyTable keys) {
+        this.keys = keys;
+    }
+
+    long getTtl() {
+        return ttl;
+    }
+
+    void setTtl(long ttl) {
+        this.ttl = ttl;
+        if (ttl == 0) {
+            whois.invalidateAll();
+            who.invalidateAll();
+        }
+    }
+
+    /**
+     * Returns the result of a <tt>WHOIS</tt> query for the specified
+     * nickname, if it is cached or already in flight, or otherwise registers
+     * the specified future as the query in flight and returns it, in which
+     * case the caller must send the query.
+     */
+    IRCFuture<IRCWhoisInfo> whois(IRCKey nickname, IRCFuture<IRCWhoisInfo> fresh) {
+        return whois.get(nickname, System.nanoTime(), fresh);
+    }
+
+    /**
+     * Returns the result of a <tt>WHO</tt> query for the specified mask, as
+     * by
+     * <code>whois()</code>. A caller which must send the query calls
+     * <code>whoSent()</code> in the same order as it queues the line.
+     */
+    IRCFuture<List<IRCWhoEntry>> who(IRCKey mask, IRCFuture<List<IRCWhoEntry>> fresh) {
+        return who.get(mask, System.nanoTime(), fresh);
+    }
+
+    /**
+     * Records that a <tt>WHO</tt> query for the specified mask is about to
+     * be queued. The rows of the replies carry no mask, so they are matched
+     * to queries by the order in which those were sent.
+     */
+    void whoSent(IRCKey mask) {
+        synchronized (whoOrder) {
+            whoOrder.add(mask);
+        }
+    }
+
+    /**
+     * Handles a numeric reply which may answer a query.
+     */
+    void reply(IRCReply reply, IRCMessage message) {
+        switch (reply) {
+            case WHOISUSER: {
+                if (message.getParamCount() < 6) {
+                    break;
+                }
+
+                String nickname = message.getParam(1);
+                IRCKey key = keys.lookup(nickname);
+                if (!whois.isPending(key)) {
+                    break;
+                }
+
+                Whois w = new Whois(nickname);
+                w.username = message.getParam(2);
+                w.hostname = message.getParam(3);
+                w.realname = message.getLastParam();
+                building.put(key, w);
+                break;
+            }
+            case WHOISSERVER: {
+                Whois w = building(message);
+                if (w != null && message.getParamCount() > 3) {
+                    w.server = message.getParam(2);
+                    w.serverInfo = message.getLastParam();
+                }
+                break;
+            }
+            case WHOISOPERATOR: {
+                Whois w = building(message);
+                if (w != null) {
+                    w.operator = true;
+                }
+                break;
+            }
+            case WHOISSECURE: {
+                Whois w = building(message);
+                if (w != null) {
+                    w.secure = true;
+                }
+                break;
+            }
+            case WHOISACCOUNT: {
+                Whois w = building(message);
+                if (w != null && message.getParamCount() > 3) {
+                    w.account = message.getParam(2);
+                }
+                break;
+            }
+            case AWAY: {
+                Whois w = building(message);
+                if (w != null) {
+                    w.awayMessage = message.getLastParam();
+                }
+                break;
+            }
+            case WHOISIDLE: {
+                Whois w = building(message);
+                if (w != null && message.getParamCount() > 3) {
+                    w.idleSeconds = parseLong(message.getParam(2));
+                    if (message.getParamCount() > 4) {
+                        long signon = parseLong(message.getParam(3));
+                        w.signonTime = signon == -1 ? -1 : signon * 1000;
+                    }
+                }
+                break;
+            }
+            case WHOISCHANNELS: {
+                Whois w = building(message);
+                if (w != null && message.getParamCount() > 2) {
+                    for (String channel : message.getLastParam().split(" ")) {
+                        if (!channel.isEmpty()) {
+                            w.channels.add(channel);
+                        }
+                    }
+                }
+                break;
+            }
+            case ENDOFWHOIS: {
+                String nickname = message.getParam(1);
+                if (nickname == null) {
+                    break;
+                }
+
+                IRCKey key = keys.lookup(nickname);
+                Whois w = building.remove(key);
+                if (w != null) {
+                    whois.complete(key, w.build(), System.nanoTime(), ttl);
+                } else {
+                    whois.fail(key, new IRCCommandException(reply, message.getParams()));
+                }
+                break;
+            }
+            case NOSUCHNICK: {
+                String nickname = message.getParam(1);
+                if (nickname != null) {
+                    IRCKey key = keys.lookup(nickname);
+                    building.remove(key);
+                    whois.fail(key, new IRCCommandException(reply, message.getParams()));
+                }
+                break;
+            }
+            case WHOREPLY: {
+                if (message.getParamCount() < 8 || !isWhoPending()) {
+                    break;
+                }
+
+                String last = message.getLastParam();
+                int split = last.indexOf(' ');
+                int hops = (int) parseLong(split == -1 ? last : last.substring(0, split));
+                String realname = split == -1 ? "" : last.substring(split + 1);
+                rows.add(new IRCWhoEntry(message.getParam(1), message.getParam(5), message.getParam(2), message.getParam(3), message.getParam(4), message.getParam(6), hops, realname));
+                break;
+            }
+            case ENDOFWHO: {
+                String mask = message.getParam(1);
+                if (mask == null) {
+                    break;
+                }
+
+                IRCKey key = keys.lookup(mask);
+                if (popWho(key)) {
+                    who.complete(key, Collections.unmodifiableList(new ArrayList<>(rows)), System.nanoTime(), ttl);
+                }
+                rows.clear();
+                break;
+            }
+            default: {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Forgets the cached results which describe the specified user.
+     */
+    void userChanged(String nickname) {
+        if (nickname == null) {
+            return;
+        }
+
+        IRCKey key = keys.lookup(nickname);
+        whois.invalidate(key);
+        synchronized (who) {
+            List<IRCKey> masks = whoByNick.get(key);
+            if (masks != null) {
+                for (IRCKey mask : masks.toArray(new IRCKey[masks.size()])) {
+                    who.invalidate(mask);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets the cached results which describe the members of the specified
+     * channel.
+     */
+    void channelChanged(String channel) {
+        if (channel != null) {
+            who.invalidate(keys.lookup(channel));
+        }
+    }
+
+    /**
+     * Recreates the keys of the queries in flight after the case mapping has
+     * changed, and forgets every cached result.
+     */
+    void rekey() {
+        whois.rekey(keys);
+        synchronized (who) {
+            who.rekey(keys);
+            whoByNick.clear();
+        }
+
+        Map<IRCKey, Whois> old = new HashMap<>(building);
+        building.clear();
+        for (Map.Entry<IRCKey, Whois> entry : old.entrySet()) {
+            building.put(keys.key(entry.getKey().getName()), entry.getValue());
+        }
+
+        synchronized (whoOrder) {
+            for (int i = whoOrder.size(); i > 0; i--) {
+                whoOrder.add(keys.key(whoOrder.poll().getName()));
+            }
+        }
+    }
+
+    /**
+     * Fails every query in flight and forgets every cached result.
+     */
+    void clear(Throwable cause) {
+        whois.clear(cause);
+        who.clear(cause);
+        synchronized (whoOrder) {
+            whoOrder.clear();
+        }
+    }
+
+    IRCCacheStats getStats() {
+        IRCCacheStats a = whois.getStats();
+        IRCCacheStats b = who.getStats();
+        return new IRCCacheStats(a.getHits() + b.getHits(), a.getMisses() + b.getMisses(), a.getSize() + b.getSize(), a.getCapacity() + b.getCapacity());
+    }
+
+    private Whois building(IRCMessage message) {
+        if (building.isEmpty()) {
+            return null;
+        }
+
+        String nickname = message.getParam(1);
+        return nickname == null ? null : building.get(keys.lookup(nickname));
+    }
+
+    private boolean isWhoPending() {
+        synchronized (whoOrder) {
+            return !whoOrder.isEmpty();
+        }
+    }
+
+    /**
+     * Removes the specified mask from the queries waiting for their replies,
+     * along with any sent before it, whose replies must have been lost.
+     *
+     * @return true if the mask was waiting.
+     */
+    private boolean popWho(IRCKey mask) {
+        synchronized (whoOrder) {
+            if (!whoOrder.contains(mask)) {
+                return false;
+            }
+            IRCKey sent;
+            do {
+                sent = whoOrder.poll();
+            } while (!sent.equals(mask));
+            return true;
+        }
+    }
+
+    private static long parseLong(String text) {
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * This class holds the queries in flight and the cached results of one
+     * kind of query. Subclasses may index the cached results, by overriding
+     * <code>cached()</code> and
+     * <code>uncached()</code>, which are called with the lock held.
+     */
+    private static class Lookups<T> {
+
+        private final Map<IRCKey, IRCFuture<T>> inFlight = new HashMap<>();
+        private final Map<IRCKey, Cached<T>> cache = new LinkedHashMap<IRCKey, Cached<T>>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<IRCKey, Cached<T>> eldest) {
+                if (size() > MAX_CACHED) {
+                    uncached(eldest.getKey(), eldest.getValue().value);
+                    return true;
+                }
+                return false;
+            }
+        };
+        private long hits;
+        private long misses;
+        /**
+         * The number of times the keys have been recreated, after which the
+         * key a future was registered under may no longer find it.
+         */
+        private int generation;
+
+        synchronized IRCFuture<T> get(final IRCKey key, long now, IRCFuture<T> fresh) {
+            Cached<T> cached = cache.get(key);
+            if (cached != null) {
+                if (now - cached.expires < 0) {
+                    hits++;
+
+                    IRCFuture<T> future = new IRCFuture<>();
+                    future.complete(cached.value);
+                    return future;
+                }
+                remove(key);
+            }
+
+            IRCFuture<T> existing = inFlight.get(key);
+            if (existing != null) {
+                hits++;
+                return existing;
+            }
+
+            misses++;
+            inFlight.put(key, fresh);
+            final int registered = generation;
+            fresh.addListener(new IRCFuture.Listener<T>() {
+                @Override
+                public void completed(IRCFuture<T> future) {
+                    synchronized (Lookups.this) {
+                        if (registered != generation) {
+                            inFlight.values().remove(future);
+                        } else if (inFlight.get(key) == future) {
+                            inFlight.remove(key);
+                        }
+                    }
+                }
+            });
+            return fresh;
+        }
+
+        synchronized boolean isPending(IRCKey key) {
+            return inFlight.containsKey(key);
+        }
+
+        void complete(IRCKey key, T value, long now, long ttl) {
+            IRCFuture<T> future;
+            synchronized (this) {
+                future = inFlight.remove(key);
+                if (ttl > 0) {
+                    remove(key);
+                    cache.put(key, new Cached<>(value, now + ttl));
+                    cached(key, value);
+                }
+            }
+
+            if (future != null) {
+                future.complete(value);
+            }
+        }
+
+        void fail(IRCKey key, Throwable cause) {
+            IRCFuture<T> future;
+            synchronized (this) {
+                future = inFlight.remove(key);
+            }
+
+            if (future != null) {
+                future.fail(cause);
+            }
+        }
+
+        /**
+         * Recreates the keys of the queries in flight and forgets every
+         * cached result. A query whose key becomes equal to another's
+         * completes with the result of the other.
+         */
+        synchronized void rekey(IRCKeyTable keys) {
+            generation++;
+            removeAll();
+
+            Map<IRCKey, IRCFuture<T>> old = new LinkedHashMap<>(inFlight);
+            inFlight.clear();
+            for (Map.Entry<IRCKey, IRCFuture<T>> entry : old.entrySet()) {
+                IRCKey key = keys.key(entry.getKey().getName());
+                IRCFuture<T> existing = inFlight.get(key);
+                if (existing == null) {
+                    inFlight.put(key, entry.getValue());
+                } else {
+                    final IRCFuture<T> merged = entry.getValue();
+                    existing.addListener(new IRCFuture.Listener<T>() {
+                        @Override
+                        public void completed(IRCFuture<T> future) {
+                            try {
+                                merged.complete(future.get());
+                            } catch (ExecutionException | InterruptedException | CancellationException ex) {
+                                merged.fail(future.getFailure());
+                            }
+                        }
+                    });
+                }
+            }
+        }
+
+        synchronized void invalidate(IRCKey key) {
+            remove(key);
+        }
+
+        synchronized void invalidateAll() {
+            removeAll();
+        }
+
+        void clear(Throwable cause) {
+            List<IRCFuture<T>> futures;
+            synchronized (this) {
+                futures = new ArrayList<>(inFlight.values());
+                inFlight.clear();
+                removeAll();
+            }
+
+            for (IRCFuture<T> future : futures) {
+                future.fail(cause);
+            }
+        }
+
+        synchronized IRCCacheStats getStats() {
+            return new IRCCacheStats(hits, misses, cache.size(), MAX_CACHED);
+        }
+
+        /**
+         * Called when a result is cached.
+         */
+        void cached(IRCKey key, T value) {
+        }
+
+        /**
+         * Called when a cached result is forgotten.
+         */
+        void uncached(IRCKey key, T value) {
+        }
+
+        private void remove(IRCKey key) {
+            Cached<T> cached = cache.remove(key);
+            if (cached != null) {
+                uncached(key, cached.value);
+            }
+        }
+
+        private void removeAll() {
+            for (Map.Entry<IRCKey, Cached<T>> entry : cache.entrySet()) {
+                uncached(entry.getKey(), entry.getValue().value);
+            }
+            cache.clear();
+        }
+
+        /**
+         * This class holds a cached result and when it expires.
+         */
+        private static final class Cached<T> {
+
+            private final T value;
+            private final long expires;
+
+            Cached(T value, long expires) {
+                this.value = value;
+                this.expires = expires;
+            }
+        }
+    }
+
+    /**
+     * This class holds a <tt>WHOIS</tt> result which is being received.
+     */
+    private static final class Whois {
+
+        private final String nickname;
+        private String username;
+        private String hostname;
+        private String realname;
+        private String server;
+        private String serverInfo;
+        private String account;
+        private String awayMessage;
+        private boolean operator;
+        private boolean secure;
+        private long idleSeconds = -1;
+        private long signonTime = -1;
+        private final List<String> channels = new ArrayList<>();
+
+        Whois(String nickname) {
+            this.nickname = nickname;
+        }
+
+        IRCWhoisInfo build() {
+            return new IRCWhoisInfo(nickname, username, hostname, realname, server, serverInfo, account, awayMessage, operator, secure, idleSeconds, signonTime, Collections.unmodifiableList(channels));
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.util.Random;
+
+/**
+ * This class describes when an
+ * <code>IRCClient</code> reconnects after its connection is lost. Attempts are
+ * spaced by an exponentially growing delay, up to a maximum, and each delay is
+ * shortened by a random fraction of itself so that many clients cut off by
+ * the same netsplit do not reconnect in lockstep.
+ *
+ * @see IRCClient#setReconnectPolicy
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+public final class IRCReconnectPolicy {
+
+    /**
+     * A policy which never reconnects, closing the client when its connection
+     * is lost.
+     */
+    public static final IRCReconnectPolicy NEVER = new IRCReconnectPolicy(0, 0, 1, 0, 0);
+    /**
+     * A policy which reconnects indefinitely, first after a quarter of a
+     * second, doubling the delay after each failed attempt up to a minute,
+     * with up to half of each delay removed at random.
+     */
+    public static final IRCReconnectPolicy DEFAULT = new IRCReconnectPolicy(250, 60000, 2, 0.5, Integer.MAX_VALUE);
+    private final long initialDelay;
+    private final long maxDelay;
+    private final double multiplier;
+    private final double jitter;
+    private final int maxAttempts;
+
+    /**
+     * Constructs a new
+     * <code>IRCReconnectPolicy</code> with the specified parameters.
+     *
+     * @param initialDelay the delay before the first attempt, in milliseconds.
+     * @param maxDelay the maximum delay before an attempt, in milliseconds.
+     * @param multiplier the factor by which the delay grows after each failed
+     * attempt.
+     * @param jitter the largest fraction of each delay which is removed at
+     * random, between 0 and 1.
+     * @param maxAttempts the number of attempts made before the client is
+     * closed.
+     *
+     * @throws IllegalArgumentException if a delay or the number of attempts
+     * is negative, the maximum delay is less than the initial delay, the
+     * multiplier is less than 1 or the jitter is not between 0 and 1
+     */
+    public IRCReconnectPolicy(long initialDelay, long maxDelay, double multiplier, double jitter, int maxAttempts) {
+        if (initialDelay < 0 || maxDelay < initialDelay || maxAttempts < 0) {
+            throw new IllegalArgumentException("Delays and attempts must satisfy 0 <= initialDelay <= maxDelay and 0 <= maxAttempts");
+        }
+
+        if (multiplier < 1) {
+            throw new IllegalArgumentException("Multiplier must be at least 1");
+        }
+
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("Jitter must be between 0 and 1");
+        }
+
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+        this.multiplier = multiplier;
+        this.jitter = jitter;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Returns the delay before the first attempt.
+     *
+     * @return the initial delay, in milliseconds.
+     */
+    public long getInitialDelay() {
+        return initialDelay;
+    }
+
+    /**
+     * Returns the maximum delay before an attempt.
+     *
+     * @return the maximum delay, in milliseconds.
+     */
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    /**
+     * Returns the factor by which the delay grows after each failed attempt.
+     *
+     * @return the multiplier.
+     */
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    /**
+     * Returns the largest fraction of each delay which is removed at random.
+     *
+     * @return the jitter.
+     */
+    public double getJitter() {
+        return jitter;
+    }
+
+    /**
+     * Returns the number of attempts made before the client is closed.
+     *
+     * @return the maximum number of attempts.
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Returns the delay before the specified attempt, counting from 1, or -1
+     * if no more attempts should be made.
+     */
+    long getDelay(int attempt, Random random) {
+        if (attempt > maxAttempts) {
+            return -1;
+        }
+
+        double delay = Math.min(maxDelay, initialDelay * Math.pow(multiplier, attempt - 1));
+        return (long) (delay * (1 - jitter * random.nextDouble()));
+    }
+}
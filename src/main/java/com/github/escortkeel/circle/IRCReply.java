@@ -26,26 +26,222 @@
 package com.github.escortkeel.circle;
 
 /**
+ * This enum represents the numeric replies an IRC server may send, as
+ * defined by RFC 2812 together with the extensions in common use. Replies
+ * whose code is not listed map to
+ * <code>NULL</code>.
  *
  * @author Keeley Hoek (escortkeel@live.com)
  */
-enum IRCReply {
+public enum IRCReply {
 
+    /**
+     * A reply whose code is not known.
+     */
     NULL(0),
+    // Connection registration.
     WELCOME(1),
-    MOTDSTART(375),
+    YOURHOST(2),
+    CREATED(3),
+    MYINFO(4),
+    ISUPPORT(5),
+    BOUNCE(10),
+    // Command responses.
+    TRACELINK(200),
+    TRACECONNECTING(201),
+    TRACEHANDSHAKE(202),
+    TRACEUNKNOWN(203),
+    TRACEOPERATOR(204),
+    TRACEUSER(205),
+    TRACESERVER(206),
+    TRACESERVICE(207),
+    TRACENEWTYPE(208),
+    TRACECLASS(209),
+    TRACERECONNECT(210),
+    STATSLINKINFO(211),
+    STATSCOMMANDS(212),
+    ENDOFSTATS(219),
+    UMODEIS(221),
+    SERVLIST(234),
+    SERVLISTEND(235),
+    STATSUPTIME(242),
+    STATSOLINE(243),
+    LUSERCLIENT(251),
+    LUSEROP(252),
+    LUSERUNKNOWN(253),
+    LUSERCHANNELS(254),
+    LUSERME(255),
+    ADMINME(256),
+    ADMINLOC1(257),
+    ADMINLOC2(258),
+    ADMINEMAIL(259),
+    TRACELOG(261),
+    TRACEEND(262),
+    TRYAGAIN(263),
+    LOCALUSERS(265),
+    GLOBALUSERS(266),
+    WHOISCERTFP(276),
+    NONE(300),
+    AWAY(301),
+    USERHOST(302),
+    ISON(303),
+    UNAWAY(305),
+    NOWAWAY(306),
+    WHOISUSER(311),
+    WHOISSERVER(312),
+    WHOISOPERATOR(313),
+    WHOWASUSER(314),
+    ENDOFWHO(315),
+    WHOISIDLE(317),
+    ENDOFWHOIS(318),
+    WHOISCHANNELS(319),
+    LISTSTART(321),
+    LIST(322),
+    LISTEND(323),
+    CHANNELMODEIS(324),
+    UNIQOPIS(325),
+    CREATIONTIME(329),
+    WHOISACCOUNT(330),
+    NOTOPIC(331),
+    TOPIC(332),
+    TOPICWHOTIME(333),
+    INVITING(341),
+    SUMMONING(342),
+    INVITELIST(346),
+    ENDOFINVITELIST(347),
+    EXCEPTLIST(348),
+    ENDOFEXCEPTLIST(349),
+    VERSION(351),
+    WHOREPLY(352),
+    NAMREPLY(353),
+    WHOSPCRPL(354),
+    LINKS(364),
+    ENDOFLINKS(365),
+    ENDOFNAMES(366),
+    BANLIST(367),
+    ENDOFBANLIST(368),
+    ENDOFWHOWAS(369),
+    INFO(371),
     MOTD(372),
+    ENDOFINFO(374),
+    MOTDSTART(375),
     ENDOFMOTD(376),
-    NICKNAMEINUSE(433);
+    WHOISHOST(378),
+    WHOISMODES(379),
+    YOUREOPER(381),
+    REHASHING(382),
+    YOURESERVICE(383),
+    TIME(391),
+    USERSSTART(392),
+    USERS(393),
+    ENDOFUSERS(394),
+    NOUSERS(395),
+    HOSTHIDDEN(396),
+    // Error replies.
+    UNKNOWNERROR(400),
+    NOSUCHNICK(401),
+    NOSUCHSERVER(402),
+    NOSUCHCHANNEL(403),
+    CANNOTSENDTOCHAN(404),
+    TOOMANYCHANNELS(405),
+    WASNOSUCHNICK(406),
+    TOOMANYTARGETS(407),
+    NOSUCHSERVICE(408),
+    NOORIGIN(409),
+    NORECIPIENT(411),
+    NOTEXTTOSEND(412),
+    NOTOPLEVEL(413),
+    WILDTOPLEVEL(414),
+    BADMASK(415),
+    INPUTTOOLONG(417),
+    UNKNOWNCOMMAND(421),
+    NOMOTD(422),
+    NOADMININFO(423),
+    FILEERROR(424),
+    NONICKNAMEGIVEN(431),
+    ERRONEUSNICKNAME(432),
+    NICKNAMEINUSE(433),
+    NICKCOLLISION(436),
+    UNAVAILRESOURCE(437),
+    USERNOTINCHANNEL(441),
+    NOTONCHANNEL(442),
+    USERONCHANNEL(443),
+    NOLOGIN(444),
+    SUMMONDISABLED(445),
+    USERSDISABLED(446),
+    NOTREGISTERED(451),
+    NEEDMOREPARAMS(461),
+    ALREADYREGISTRED(462),
+    NOPERMFORHOST(463),
+    PASSWDMISMATCH(464),
+    YOUREBANNEDCREEP(465),
+    YOUWILLBEBANNED(466),
+    KEYSET(467),
+    CHANNELISFULL(471),
+    UNKNOWNMODE(472),
+    INVITEONLYCHAN(473),
+    BANNEDFROMCHAN(474),
+    BADCHANNELKEY(475),
+    BADCHANMASK(476),
+    NOCHANMODES(477),
+    BANLISTFULL(478),
+    NOPRIVILEGES(481),
+    CHANOPRIVSNEEDED(482),
+    CANTKILLSERVER(483),
+    RESTRICTED(484),
+    UNIQOPPRIVSNEEDED(485),
+    NOOPERHOST(491),
+    UMODEUNKNOWNFLAG(501),
+    USERSDONTMATCH(502),
+    HELPNOTFOUND(524),
+    INVALIDKEY(525),
+    // Extensions in common use.
+    STARTTLS(670),
+    WHOISSECURE(671),
+    STARTTLSFAIL(691),
+    INVALIDMODEPARAM(696),
+    HELPSTART(704),
+    HELPTXT(705),
+    ENDOFHELP(706),
+    NOPRIVS(723),
+    MONONLINE(730),
+    MONOFFLINE(731),
+    MONLIST(732),
+    ENDOFMONLIST(733),
+    MONLISTFULL(734),
+    LOGGEDIN(900),
+    LOGGEDOUT(901),
+    NICKLOCKED(902),
+    SASLSUCCESS(903),
+    SASLFAIL(904),
+    SASLTOOLONG(905),
+    SASLABORTED(906),
+    SASLALREADY(907),
+    SASLMECHS(908);
+    private static final IRCReply[] BY_CODE = new IRCReply[1000];
 
-    public static IRCReply toEnum(int code) {
+    static {
         for (IRCReply r : IRCReply.values()) {
-            if (r.getCode() == code) {
-                return r;
+            if (r != NULL) {
+                BY_CODE[r.code] = r;
             }
         }
+    }
 
-        return NULL;
+    /**
+     * Returns the reply with the specified code, or
+     * <code>NULL</code> if the code is not known.
+     *
+     * @param code the numeric code of the reply.
+     * @return the reply.
+     */
+    public static IRCReply toEnum(int code) {
+        if (code < 0 || code >= BY_CODE.length) {
+            return NULL;
+        }
+
+        IRCReply r = BY_CODE[code];
+        return r == null ? NULL : r;
     }
     private final int code;
 
@@ -53,7 +249,22 @@ enum IRCReply {
         this.code = code;
     }
 
+    /**
+     * Returns the numeric code of this reply.
+     *
+     * @return the code.
+     */
     public int getCode() {
         return code;
     }
+
+    /**
+     * Returns whether this reply reports an error, as replies numbered from
+     * 400 to 599 do.
+     *
+     * @return true if this reply is an error.
+     */
+    public boolean isError() {
+        return code >= 400 && code < 600;
+    }
 }
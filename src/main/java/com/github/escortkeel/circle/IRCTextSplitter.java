@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class splits message text into chunks which each fit within a given
+ * number of encoded bytes. Chunks are broken at the last space which fits
+ * where possible, and otherwise between two characters; a character is never
+ * split between chunks. Line breaks in the text always start a new chunk, and
+ * empty lines are dropped.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+final class IRCTextSplitter {
+
+    /**
+     * Returns the number of bytes the specified code point occupies when
+     * encoded with the specified charset.
+     */
+    static int length(int codePoint, Charset charset, CharsetEncoder encoder) {
+        if (charset.equals(IRCCodec.UTF_8)) {
+            if (codePoint < 0x80) {
+                return 1;
+            } else if (codePoint < 0x800) {
+                return 2;
+            } else if (codePoint < 0x10000) {
+                return 3;
+            } else {
+                return 4;
+            }
+        }
+
+        if (encoder.maxBytesPerChar() == 1) {
+            return 1;
+        }
+        return new String(Character.toChars(codePoint)).getBytes(charset).length;
+    }
+
+    /**
+     * Splits the specified text into chunks of at most the specified number
+     * of bytes.
+     *
+     * @param text the text.
+     * @param maxBytes the maximum length of a chunk in bytes.
+     * @param charset the charset the chunks will be encoded with.
+     * @return the chunks, of which there is at least one.
+     */
+    static List<String> split(String text, int maxBytes, Charset charset) {
+        if (maxBytes < 4) {
+            throw new IllegalArgumentException("Chunks must be able to hold a character");
+        }
+
+        CharsetEncoder encoder = charset.newEncoder();
+        List<String> chunks = new ArrayList<>();
+        int start = 0;
+        int bytes = 0;
+        int space = -1;
+        int i = 0;
+        while (i < text.length()) {
+            int cp = text.codePointAt(i);
+            int next = i + Character.charCount(cp);
+
+            if (cp == '\r' || cp == '\n') {
+                if (i > start) {
+                    chunks.add(text.substring(start, i));
+                }
+                if (cp == '\r' && next < text.length() && text.charAt(next) == '\n') {
+                    next++;
+                }
+                start = next;
+                bytes = 0;
+                space = -1;
+                i = next;
+                continue;
+            }
+
+            int length = length(cp, charset, encoder);
+            if (bytes + length > maxBytes) {
+                if (space > start) {
+                    chunks.add(text.substring(start, space));
+                    start = space + 1;
+                    bytes = byteLength(text, start, i, charset, encoder);
+                }
+                if (bytes + length > maxBytes) {
+                    // The word after the space still does not fit with this
+                    // character, so it is broken here instead.
+                    if (i > start) {
+                        chunks.add(text.substring(start, i));
+                    }
+                    start = i;
+                    bytes = 0;
+                }
+                space = -1;
+            }
+
+            if (cp == ' ') {
+                space = i;
+            }
+            bytes += length;
+            i = next;
+        }
+        if (start < text.length() || chunks.isEmpty()) {
+            // Empty text is sent as-is, as a single empty chunk.
+            chunks.add(text.substring(start));
+        }
+
+        return chunks;
+    }
+
+    private static int byteLength(String text, int from, int to, Charset charset, CharsetEncoder encoder) {
+        int bytes = 0;
+        for (int i = from; i < to;) {
+            int cp = text.codePointAt(i);
+            bytes += length(cp, charset, encoder);
+            i += Character.charCount(cp);
+        }
+        return bytes;
+    }
+
+    private IRCTextSplitter() {
+    }
+}
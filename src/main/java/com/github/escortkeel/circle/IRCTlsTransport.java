@@ -0,0 +1,406 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+
+/**
+ * This class carries the bytes of a connection over its socket encrypted by
+ * TLS, using an
+ * <code>SSLEngine</code> directly rather than a blocking socket, so that
+ * reading and writing remain asynchronous.
+ *
+ * The network and application buffers are taken from the shared buffer pools
+ * when the transport is created, and returned once it has been closed and no
+ * operation is still using them.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+final class IRCTlsTransport implements IRCTransport {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    private static final int CLOSED = Integer.MIN_VALUE;
+    private final AsynchronousSocketChannel channel;
+    private final SSLEngine engine;
+    private final int packetSize;
+    private final int applicationSize;
+    private final ByteBuffer netIn;
+    private final ByteBuffer netOut;
+    private final ByteBuffer appIn;
+    /**
+     * The number of operations using the buffers, with the sign bit set once
+     * the transport is closed.
+     */
+    private final AtomicInteger state = new AtomicInteger();
+
+    IRCTlsTransport(AsynchronousSocketChannel channel, SSLEngine engine) {
+        this.channel = channel;
+        this.engine = engine;
+
+        packetSize = engine.getSession().getPacketBufferSize();
+        applicationSize = engine.getSession().getApplicationBufferSize();
+        netIn = IRCBufferPool.DIRECT.acquire(packetSize);
+        // Room for two records, so that a write of many lines and a read of
+        // many small records each take fewer round trips.
+        netOut = IRCBufferPool.DIRECT.acquire(2 * packetSize);
+        appIn = IRCBufferPool.HEAP.acquire(2 * applicationSize);
+    }
+
+    @Override
+    public AsynchronousSocketChannel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public void handshake(CompletionHandler<Void, Void> handler) {
+        if (!enter()) {
+            handler.failed(new ClosedChannelException(), null);
+            return;
+        }
+
+        try {
+            engine.beginHandshake();
+        } catch (SSLException ex) {
+            handler.failed(ex, null);
+            return;
+        } finally {
+            exit();
+        }
+        step(handler);
+    }
+
+    private void step(final CompletionHandler<Void, Void> handler) {
+        if (!enter()) {
+            handler.failed(new ClosedChannelException(), null);
+            return;
+        }
+
+        try {
+            while (true) {
+                switch (engine.getHandshakeStatus()) {
+                    case NEED_TASK: {
+                        runTasks();
+                        break;
+                    }
+                    case NEED_WRAP: {
+                        netOut.clear();
+                        SSLEngineResult result = engine.wrap(EMPTY, netOut);
+                        if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                            throw new SSLException("Connection closed during handshake");
+                        }
+                        netOut.flip();
+
+                        writeNet(new CompletionHandler<Void, Void>() {
+                            @Override
+                            public void completed(Void result, Void attachment) {
+                                step(handler);
+                            }
+
+                            @Override
+                            public void failed(Throwable exc, Void attachment) {
+                                handler.failed(exc, null);
+                            }
+                        });
+                        return;
+                    }
+                    case FINISHED:
+                    case NOT_HANDSHAKING: {
+                        handler.completed(null, null);
+                        return;
+                    }
+                    default: {
+                        SSLEngineResult result = unwrap();
+                        if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                            throw new SSLException("Connection closed during handshake");
+                        }
+
+                        if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                            readNet(new CompletionHandler<Integer, Void>() {
+                                @Override
+                                public void completed(Integer result, Void attachment) {
+                                    if (result == -1) {
+                                        handler.failed(new EOFException("Connection closed during handshake"), null);
+                                    } else {
+                                        step(handler);
+                                    }
+                                }
+
+                                @Override
+                                public void failed(Throwable exc, Void attachment) {
+                                    handler.failed(exc, null);
+                                }
+                            });
+                            return;
+                        }
+                        break;
+                    }
+                }
+            }
+        } catch (SSLException ex) {
+            handler.failed(ex, null);
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public void read(final ByteBuffer dst, final CompletionHandler<Integer, Void> handler) {
+        if (!enter()) {
+            handler.failed(new ClosedChannelException(), null);
+            return;
+        }
+
+        try {
+            while (appIn.position() == 0) {
+                SSLEngineResult result = unwrap();
+                switch (result.getStatus()) {
+                    case BUFFER_UNDERFLOW: {
+                        readNet(new CompletionHandler<Integer, Void>() {
+                            @Override
+                            public void completed(Integer result, Void attachment) {
+                                if (result == -1) {
+                                    handler.completed(-1, null);
+                                } else {
+                                    read(dst, handler);
+                                }
+                            }
+
+                            @Override
+                            public void failed(Throwable exc, Void attachment) {
+                                handler.failed(exc, null);
+                            }
+                        });
+                        return;
+                    }
+                    case BUFFER_OVERFLOW: {
+                        throw new SSLException("Record larger than the application buffer");
+                    }
+                    case CLOSED: {
+                        handler.completed(-1, null);
+                        return;
+                    }
+                    default: {
+                        if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                            runTasks();
+                        }
+                        break;
+                    }
+                }
+            }
+
+            // Decrypt whatever else has arrived while it fits, so that a burst
+            // of small records completes in few reads.
+            while (netIn.position() > 0 && appIn.remaining() >= applicationSize) {
+                if (unwrap().getStatus() != SSLEngineResult.Status.OK) {
+                    break;
+                }
+            }
+
+            appIn.flip();
+            int count = Math.min(dst.remaining(), appIn.remaining());
+            ByteBuffer slice = appIn.duplicate();
+            slice.limit(slice.position() + count);
+            dst.put(slice);
+            appIn.position(appIn.position() + count);
+            appIn.compact();
+
+            handler.completed(count, null);
+        } catch (SSLException ex) {
+            handler.failed(ex, null);
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer[] srcs, int offset, int length, final CompletionHandler<Long, Void> handler) {
+        if (!enter()) {
+            handler.failed(new ClosedChannelException(), null);
+            return;
+        }
+
+        try {
+            netOut.clear();
+            long consumed = 0;
+            while (netOut.remaining() >= packetSize && hasRemaining(srcs, offset, length)) {
+                SSLEngineResult result = engine.wrap(srcs, offset, length, netOut);
+                if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                    throw new SSLException("Connection closed");
+                }
+
+                consumed += result.bytesConsumed();
+                if (result.getStatus() != SSLEngineResult.Status.OK) {
+                    break;
+                }
+            }
+            netOut.flip();
+
+            final long taken = consumed;
+            writeNet(new CompletionHandler<Void, Void>() {
+                @Override
+                public void completed(Void result, Void attachment) {
+                    handler.completed(taken, null);
+                }
+
+                @Override
+                public void failed(Throwable exc, Void attachment) {
+                    handler.failed(exc, null);
+                }
+            });
+        } catch (SSLException ex) {
+            handler.failed(ex, null);
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        int s;
+        do {
+            s = state.get();
+            if (s < 0) {
+                return;
+            }
+        } while (!state.compareAndSet(s, s | CLOSED));
+
+        engine.closeOutbound();
+        try {
+            channel.close();
+        } finally {
+            if (s == 0) {
+                release();
+            }
+        }
+    }
+
+    private SSLEngineResult unwrap() throws SSLException {
+        netIn.flip();
+        try {
+            return engine.unwrap(netIn, appIn);
+        } finally {
+            netIn.compact();
+        }
+    }
+
+    private void readNet(final CompletionHandler<Integer, Void> handler) {
+        if (!enter()) {
+            handler.failed(new ClosedChannelException(), null);
+            return;
+        }
+
+        channel.read(netIn, null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer result, Void attachment) {
+                exit();
+                handler.completed(result, null);
+            }
+
+            @Override
+            public void failed(Throwable exc, Void attachment) {
+                exit();
+                handler.failed(exc, null);
+            }
+        });
+    }
+
+    /**
+     * Writes the whole of the network output buffer.
+     */
+    private void writeNet(final CompletionHandler<Void, Void> handler) {
+        if (!enter()) {
+            handler.failed(new ClosedChannelException(), null);
+            return;
+        }
+
+        channel.write(netOut, null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer result, Void attachment) {
+                if (netOut.hasRemaining()) {
+                    channel.write(netOut, null, this);
+                    return;
+                }
+
+                exit();
+                handler.completed(null, null);
+            }
+
+            @Override
+            public void failed(Throwable exc, Void attachment) {
+                exit();
+                handler.failed(exc, null);
+            }
+        });
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    private boolean enter() {
+        int s;
+        do {
+            s = state.get();
+            if (s < 0) {
+                return false;
+            }
+        } while (!state.compareAndSet(s, s + 1));
+        return true;
+    }
+
+    private void exit() {
+        if (state.decrementAndGet() == CLOSED) {
+            release();
+        }
+    }
+
+    private void release() {
+        IRCBufferPool.DIRECT.release(netIn);
+        IRCBufferPool.DIRECT.release(netOut);
+        IRCBufferPool.HEAP.release(appIn);
+    }
+
+    private static boolean hasRemaining(ByteBuffer[] buffers, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (buffers[i].hasRemaining()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+
+/**
+ * This interface carries the bytes of a connection of an
+ * <code>IRCClient</code> over its socket, possibly transforming them, as TLS
+ * does. At most one read and one write may be outstanding at a time, and a
+ * handler may be invoked by the thread which started the operation.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+interface IRCTransport {
+
+    /**
+     * Returns the socket underlying this transport.
+     */
+    AsynchronousSocketChannel getChannel();
+
+    /**
+     * Prepares the connected socket to carry lines, completing the handler
+     * once it may.
+     */
+    void handshake(CompletionHandler<Void, Void> handler);
+
+    /**
+     * Reads bytes into the specified buffer, completing the handler with the
+     * number of bytes read, or -1 at the end of the stream.
+     */
+    void read(ByteBuffer dst, CompletionHandler<Integer, Void> handler);
+
+    /**
+     * Writes bytes from the specified buffers, completing the handler with
+     * the number of bytes taken from them, which may be fewer than remain.
+     */
+    void write(ByteBuffer[] srcs, int offset, int length, CompletionHandler<Long, Void> handler);
+
+    /**
+     * Closes the transport and its socket.
+     */
+    void close() throws IOException;
+}
@@ -26,6 +26,15 @@
 package com.github.escortkeel.circle;
 
 /**
+ * This class represents the source of a message, as given by its prefix of
+ * the form <tt>nickname!username@hostname</tt>. The username and hostname
+ * are <tt>null</tt> if they are absent, as they are when the source is a
+ * server.
+ * The username is given as sent by the server, including any leading
+ * <tt>~</tt> which marks a username the server could not verify.
+ *
+ * Instances are immutable, and are shared between the messages received from
+ * the same source.
  *
  * @author escortkeel
  */
@@ -36,31 +45,21 @@ public class IRCUser {
     private final String hostname;
 
     public IRCUser(String raw) {
-        int split = raw.indexOf("!~");
-        if (split == -1) {
-            nickname = raw;
-            raw = null;
-        } else {
-            nickname = raw.substring(0, split);
-            raw = raw.substring(split + 2);
-        }
-        
-        if(raw == null) {
+        int bang = raw.indexOf('!');
+        int at = raw.indexOf('@', bang + 1);
+        int nickEnd = bang != -1 ? bang : (at != -1 ? at : raw.length());
+
+        nickname = raw.substring(0, nickEnd);
+        if (bang == -1) {
             username = null;
-        } else {            
-            split = raw.indexOf("@");
-            if (split == -1) {
-                username = raw;
-            } else {
-                username = raw.substring(0, split);
-                raw = raw.substring(split + 1);                
-            }
+        } else {
+            username = raw.substring(bang + 1, at != -1 ? at : raw.length());
         }
-        
-        if(raw == null) {
+
+        if (at == -1) {
             hostname = null;
         } else {
-            hostname = raw;
+            hostname = raw.substring(at + 1);
         }
     }
 
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+/**
+ * This class caches the
+ * <code>IRCUser</code>s parsed from message prefixes, keyed by the raw bytes
+ * of the prefix, so that the few thousand sources an
+ * <code>IRCClient</code> usually hears from are parsed once and then shared.
+ *
+ * The cache is two-way set associative and bounded. Each entry has a
+ * reference bit which is set when it is hit; a miss replaces an entry of its
+ * set which is empty or whose bit is clear, clearing the bits it passes
+ * over, in the manner of a clock.
+ *
+ * Lookups are only performed by the thread reading from the connection; the
+ * statistics may be read from any thread.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+final class IRCUserCache {
+
+    private static final int WAYS = 2;
+    private final IRCCodec codec;
+    private final int mask;
+    private final byte[][] keys;
+    private final int[] hashes;
+    private final IRCUser[] users;
+    private final boolean[] referenced;
+    private volatile long hits = 0;
+    private volatile long misses = 0;
+    private volatile int size = 0;
+
+    /**
+     * Constructs a new
+     * <code>IRCUserCache</code> of the specified number of sets, which must be
+     * a power of two.
+     */
+    IRCUserCache(IRCCodec codec, int sets) {
+        if (Integer.bitCount(sets) != 1) {
+            throw new IllegalArgumentException("The number of sets must be a power of two");
+        }
+
+        this.codec = codec;
+        this.mask = sets - 1;
+        this.keys = new byte[sets * WAYS][];
+        this.hashes = new int[sets * WAYS];
+        this.users = new IRCUser[sets * WAYS];
+        this.referenced = new boolean[sets * WAYS];
+    }
+
+    /**
+     * Returns the user represented by the specified prefix bytes.
+     */
+    IRCUser get(byte[] buf, int from, int to) {
+        int hash = hash(buf, from, to);
+        int base = (spread(hash) & mask) * WAYS;
+        for (int i = base; i < base + WAYS; i++) {
+            if (hashes[i] == hash && matches(keys[i], buf, from, to)) {
+                referenced[i] = true;
+                hits++;
+                return users[i];
+            }
+        }
+        misses++;
+
+        IRCUser user = new IRCUser(codec.decode(buf, from, to, null));
+        int victim = -1;
+        for (int i = base; i < base + WAYS && victim == -1; i++) {
+            if (keys[i] == null) {
+                victim = i;
+            }
+        }
+        for (int i = base; i < base + WAYS && victim == -1; i++) {
+            if (!referenced[i]) {
+                victim = i;
+            }
+            referenced[i] = false;
+        }
+        if (victim == -1) {
+            victim = base;
+        }
+
+        if (keys[victim] == null) {
+            size++;
+        }
+        byte[] key = new byte[to - from];
+        System.arraycopy(buf, from, key, 0, key.length);
+        keys[victim] = key;
+        hashes[victim] = hash;
+        users[victim] = user;
+        referenced[victim] = false;
+        return user;
+    }
+
+    IRCCacheStats getStats() {
+        return new IRCCacheStats(hits, misses, size, keys.length);
+    }
+
+    private static int hash(byte[] buf, int from, int to) {
+        int h = 1;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + buf[i];
+        }
+        return h;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(byte[] key, byte[] buf, int from, int to) {
+        if (key == null || key.length != to - from) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != buf[from + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
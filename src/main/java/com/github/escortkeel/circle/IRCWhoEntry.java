@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+/**
+ * This class holds one of the users returned by a
+ * <tt>WHO</tt> query.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ * @see IRCClient#who
+ */
+public final class IRCWhoEntry {
+
+    private final String channel;
+    private final String nickname;
+    private final String username;
+    private final String hostname;
+    private final String server;
+    private final String flags;
+    private final int hops;
+    private final String realname;
+
+    IRCWhoEntry(String channel, String nickname, String username, String hostname, String server, String flags, int hops, String realname) {
+        this.channel = channel;
+        this.nickname = nickname;
+        this.username = username;
+        this.hostname = hostname;
+        this.server = server;
+        this.flags = flags;
+        this.hops = hops;
+        this.realname = realname;
+    }
+
+    /**
+     * Returns the channel the user was matched in, or <tt>*</tt> if the user
+     * was not matched through a channel.
+     *
+     * @return the channel.
+     */
+    public String getChannel() {
+        return channel;
+    }
+
+    /**
+     * Returns the nickname of the user.
+     *
+     * @return the nickname.
+     */
+    public String getNickname() {
+        return nickname;
+    }
+
+    /**
+     * Returns the username of the user.
+     *
+     * @return the username.
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Returns the hostname of the user.
+     *
+     * @return the hostname.
+     */
+    public String getHostname() {
+        return hostname;
+    }
+
+    /**
+     * Returns the name of the server the user is connected to.
+     *
+     * @return the server.
+     */
+    public String getServer() {
+        return server;
+    }
+
+    /**
+     * Returns the raw flags of the user, such as <tt>H</tt> or <tt>G*@</tt>.
+     *
+     * @return the flags.
+     */
+    public String getFlags() {
+        return flags;
+    }
+
+    /**
+     * Returns whether the user is away.
+     *
+     * @return true if the user is away.
+     */
+    public boolean isAway() {
+        return flags.startsWith("G");
+    }
+
+    /**
+     * Returns whether the user is an IRC operator.
+     *
+     * @return true if the user is an operator.
+     */
+    public boolean isOperator() {
+        return flags.indexOf('*') != -1;
+    }
+
+    /**
+     * Returns the number of hops between this client's server and the user's.
+     *
+     * @return the hop count, or -1 if it was not sent.
+     */
+    public int getHops() {
+        return hops;
+    }
+
+    /**
+     * Returns the real name of the user.
+     *
+     * @return the real name.
+     */
+    public String getRealname() {
+        return realname;
+    }
+
+    @Override
+    public String toString() {
+        return nickname + "!" + username + "@" + hostname;
+    }
+}
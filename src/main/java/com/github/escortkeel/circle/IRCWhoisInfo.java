@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.util.List;
+
+/**
+ * This class holds the information about a user returned by a
+ * <tt>WHOIS</tt> query, aggregated from the several replies which make it up.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ * @see IRCClient#whois
+ */
+public final class IRCWhoisInfo {
+
+    private final String nickname;
+    private final String username;
+    private final String hostname;
+    private final String realname;
+    private final String server;
+    private final String serverInfo;
+    private final String account;
+    private final String awayMessage;
+    private final boolean operator;
+    private final boolean secure;
+    private final long idleSeconds;
+    private final long signonTime;
+    private final List<String> channels;
+
+    IRCWhoisInfo(String nickname, String username, String hostname, String realname, String server, String serverInfo, String account, String awayMessage, boolean operator, boolean secure, long idleSeconds, long signonTime, List<String> channels) {
+        this.nickname = nickname;
+        this.username = username;
+        this.hostname = hostname;
+        this.realname = realname;
+        this.server = server;
+        this.serverInfo = serverInfo;
+        this.account = account;
+        this.awayMessage = awayMessage;
+        this.operator = operator;
+        this.secure = secure;
+        this.idleSeconds = idleSeconds;
+        this.signonTime = signonTime;
+        this.channels = channels;
+    }
+
+    /**
+     * Returns the nickname of the user.
+     *
+     * @return the nickname.
+     */
+    public String getNickname() {
+        return nickname;
+    }
+
+    /**
+     * Returns the username of the user.
+     *
+     * @return the username, or <tt>null</tt> if it was not sent.
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Returns the hostname of the user.
+     *
+     * @return the hostname, or <tt>null</tt> if it was not sent.
+     */
+    public String getHostname() {
+        return hostname;
+    }
+
+    /**
+     * Returns the real name of the user.
+     *
+     * @return the real name, or <tt>null</tt> if it was not sent.
+     */
+    public String getRealname() {
+        return realname;
+    }
+
+    /**
+     * Returns the name of the server the user is connected to.
+     *
+     * @return the server, or <tt>null</tt> if it was not sent.
+     */
+    public String getServer() {
+        return server;
+    }
+
+    /**
+     * Returns the description of the server the user is connected to.
+     *
+     * @return the description, or <tt>null</tt> if it was not sent.
+     */
+    public String getServerInfo() {
+        return serverInfo;
+    }
+
+    /**
+     * Returns the account the user is logged in to.
+     *
+     * @return the account, or <tt>null</tt> if the user is not logged in.
+     */
+    public String getAccount() {
+        return account;
+    }
+
+    /**
+     * Returns the away message of the user.
+     *
+     * @return the away message, or <tt>null</tt> if the user is not away.
+     */
+    public String getAwayMessage() {
+        return awayMessage;
+    }
+
+    /**
+     * Returns whether the user is an IRC operator.
+     *
+     * @return true if the user is an operator.
+     */
+    public boolean isOperator() {
+        return operator;
+    }
+
+    /**
+     * Returns whether the user is connected securely.
+     *
+     * @return true if the user is connected securely.
+     */
+    public boolean isSecure() {
+        return secure;
+    }
+
+    /**
+     * Returns the number of seconds the user has been idle.
+     *
+     * @return the idle time, or -1 if it was not sent.
+     */
+    public long getIdleSeconds() {
+        return idleSeconds;
+    }
+
+    /**
+     * Returns the time the user connected, in milliseconds since the epoch.
+     *
+     * @return the signon time, or -1 if it was not sent.
+     */
+    public long getSignonTime() {
+        return signonTime;
+    }
+
+    /**
+     * Returns the channels the user is visibly in, each prefixed by the
+     * status of the user in it, if any.
+     *
+     * @return an unmodifiable list of the channels.
+     */
+    public List<String> getChannels() {
+        return channels;
+    }
+
+    @Override
+    public String toString() {
+        return nickname + "!" + username + "@" + hostname;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle.event;
+
+import com.github.escortkeel.circle.IRCClient;
+import java.util.List;
+
+/**
+ * This class represents an IRC batch event, generated by an
+ * <code>IRCClient</code> instance when a batch of messages, such as a
+ * netsplit, a netjoin or a playback of history, has been received in full.
+ *
+ * The messages of a batch update the state of the client as they arrive. If
+ * a listener handles this event, they generate no events of their own and
+ * are delivered together by this event instead; otherwise they generate
+ * their usual events. Batches nested within another batch, including the
+ * lines which open and close them, are delivered as part of the outermost
+ * one.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+public class IRCBatchEvent extends IRCEvent {
+
+    private final String reference;
+    private final String type;
+    private final List<String> params;
+    private final List<String> messages;
+
+    /**
+     * Constructs a new
+     * <code>IRCBatchEvent</code> with the specified parameters.
+     */
+    public IRCBatchEvent(IRCClient client, String reference, String type, List<String> params, List<String> messages) {
+        super(client);
+
+        this.reference = reference;
+        this.type = type;
+        this.params = params;
+        this.messages = messages;
+    }
+
+    /**
+     * Returns the reference by which the server identified the batch.
+     *
+     * @return the reference.
+     */
+    public String getReference() {
+        return reference;
+    }
+
+    /**
+     * Returns the type of the batch, such as <tt>netsplit</tt>,
+     * <tt>netjoin</tt> or <tt>chathistory</tt>.
+     *
+     * @return the type.
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Returns the parameters of the batch, which depend on its type.
+     *
+     * @return an immutable list of the parameters.
+     */
+    public List<String> getParams() {
+        return params;
+    }
+
+    /**
+     * Returns the raw messages of the batch in the order they were received,
+     * including their prefixes and their tags, such as <tt>time</tt>,
+     * <tt>msgid</tt> and <tt>batch</tt>.
+     *
+     * @return an immutable list of the messages.
+     */
+    public List<String> getMessages() {
+        return messages;
+    }
+}
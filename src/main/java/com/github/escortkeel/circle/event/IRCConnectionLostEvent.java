@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle.event;
+
+import com.github.escortkeel.circle.IRCClient;
+
+/**
+ * This class represents an IRC connection lost event, generated by an
+ * <code>IRCClient</code> instance when its connection fails and it is about to
+ * reconnect, according to its reconnect policy. If the client will not
+ * reconnect, an
+ * <code>IRCConnectionClosedEvent</code> is generated instead.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+public class IRCConnectionLostEvent extends IRCConnectionEvent {
+
+    private final Throwable cause;
+    private final int attempt;
+    private final long delay;
+
+    /**
+     * Constructs a new
+     * <code>IRCConnectionLostEvent</code> with the specified parameters.
+     */
+    public IRCConnectionLostEvent(IRCClient client, Throwable cause, int attempt, long delay) {
+        super(client);
+
+        this.cause = cause;
+        this.attempt = attempt;
+        this.delay = delay;
+    }
+
+    /**
+     * Returns the reason the connection failed.
+     *
+     * @return the cause of the failure.
+     */
+    public Throwable getCause() {
+        return cause;
+    }
+
+    /**
+     * Returns the number of the attempt which is about to be made, counting
+     * from 1 since the client was last welcomed.
+     *
+     * @return the attempt number.
+     */
+    public int getAttempt() {
+        return attempt;
+    }
+
+    /**
+     * Returns the number of milliseconds until the attempt is made.
+     *
+     * @return the delay, in milliseconds.
+     */
+    public long getDelay() {
+        return delay;
+    }
+}
@@ -26,6 +26,7 @@
 package com.github.escortkeel.circle.event;
 
 import com.github.escortkeel.circle.IRCClient;
+import com.github.escortkeel.circle.IRCMessageTags;
 import com.github.escortkeel.circle.IRCUser;
 
 /**
@@ -43,7 +44,15 @@ public class IRCErrorEvent extends IRCMessageEvent {
      * <code>IRCErrorEvent</code> with the specified parameters.
      */
     public IRCErrorEvent(IRCClient client, IRCUser source, String message) {
-        super(client, source, message);
+        this(client, source, message, IRCMessageTags.EMPTY);
+    }
+
+    /**
+     * Constructs a new
+     * <code>IRCErrorEvent</code> with the specified parameters.
+     */
+    public IRCErrorEvent(IRCClient client, IRCUser source, String message, IRCMessageTags tags) {
+        super(client, source, message, tags);
 
         int split = message.indexOf(":");
         if (split == -1) {
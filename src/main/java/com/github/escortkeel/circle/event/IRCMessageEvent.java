@@ -26,6 +26,7 @@
 package com.github.escortkeel.circle.event;
 
 import com.github.escortkeel.circle.IRCClient;
+import com.github.escortkeel.circle.IRCMessageTags;
 import com.github.escortkeel.circle.IRCUser;
 
 /**
@@ -39,16 +40,26 @@ public abstract class IRCMessageEvent extends IRCEvent {
 
     private final IRCUser source;
     private final String rawMessage;
+    private final IRCMessageTags tags;
 
     /**
      * Constructs a new
      * <code>IRCMessageEvent</code> with the specified parameters.
      */
     public IRCMessageEvent(IRCClient client, IRCUser source, String rawMessage) {
+        this(client, source, rawMessage, IRCMessageTags.EMPTY);
+    }
+
+    /**
+     * Constructs a new
+     * <code>IRCMessageEvent</code> with the specified parameters.
+     */
+    public IRCMessageEvent(IRCClient client, IRCUser source, String rawMessage, IRCMessageTags tags) {
         super(client);
 
         this.source = source;
         this.rawMessage = rawMessage;
+        this.tags = tags;
     }
 
     /**
@@ -69,4 +80,13 @@ public abstract class IRCMessageEvent extends IRCEvent {
     public String getRawMessage() {
         return rawMessage;
     }
+
+    /**
+     * Returns the IRCv3 tags of the message, which are empty if it has none.
+     *
+     * @return the tags.
+     */
+    public IRCMessageTags getTags() {
+        return tags;
+    }
 }
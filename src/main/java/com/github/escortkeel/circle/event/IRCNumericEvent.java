@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle.event;
+
+import com.github.escortkeel.circle.IRCClient;
+import com.github.escortkeel.circle.IRCMessageTags;
+import com.github.escortkeel.circle.IRCReply;
+import com.github.escortkeel.circle.IRCUser;
+import java.util.List;
+
+/**
+ * This class represents an IRC numeric reply event, generated by an
+ * <code>IRCClient</code> instance when any numeric reply is received.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+public class IRCNumericEvent extends IRCMessageEvent {
+
+    private final int code;
+    private final IRCReply reply;
+    private final List<String> params;
+
+    /**
+     * Constructs a new
+     * <code>IRCNumericEvent</code> with the specified parameters.
+     */
+    public IRCNumericEvent(IRCClient client, IRCUser source, String message, int code, List<String> params) {
+        this(client, source, message, IRCMessageTags.EMPTY, code, params);
+    }
+
+    /**
+     * Constructs a new
+     * <code>IRCNumericEvent</code> with the specified parameters.
+     */
+    public IRCNumericEvent(IRCClient client, IRCUser source, String message, IRCMessageTags tags, int code, List<String> params) {
+        super(client, source, message, tags);
+
+        this.code = code;
+        this.reply = IRCReply.toEnum(code);
+        this.params = params;
+    }
+
+    /**
+     * Returns the numeric code of the reply.
+     *
+     * @return the code.
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Returns the reply, or
+     * <code>IRCReply.NULL</code> if its code is not known.
+     *
+     * @return the reply.
+     */
+    public IRCReply getReply() {
+        return reply;
+    }
+
+    /**
+     * Returns the parameters of the reply, the first of which is usually the
+     * nickname of the client.
+     *
+     * @return an immutable list of the parameters.
+     */
+    public List<String> getParams() {
+        return params;
+    }
+
+    /**
+     * Returns the parameter of the reply at the specified index, or
+     * <tt>null</tt> if there is no such parameter.
+     *
+     * @param index the index of the parameter.
+     * @return the parameter.
+     */
+    public String getParam(int index) {
+        return index < params.size() ? params.get(index) : null;
+    }
+}
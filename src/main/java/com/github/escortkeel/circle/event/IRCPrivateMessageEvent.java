@@ -26,6 +26,7 @@
 package com.github.escortkeel.circle.event;
 
 import com.github.escortkeel.circle.IRCClient;
+import com.github.escortkeel.circle.IRCMessageTags;
 import com.github.escortkeel.circle.IRCUser;
 
 /**
@@ -44,7 +45,15 @@ public class IRCPrivateMessageEvent extends IRCMessageEvent {
      * <code>IRCPrivateMessageEvent</code> with the specified parameters.
      */
     public IRCPrivateMessageEvent(IRCClient client, IRCUser source, String message) {
-        super(client, source, message);
+        this(client, source, message, IRCMessageTags.EMPTY);
+    }
+
+    /**
+     * Constructs a new
+     * <code>IRCPrivateMessageEvent</code> with the specified parameters.
+     */
+    public IRCPrivateMessageEvent(IRCClient client, IRCUser source, String message, IRCMessageTags tags) {
+        super(client, source, message, tags);
 
         int split = message.indexOf(" ");
         this.target = message.substring(0, split);
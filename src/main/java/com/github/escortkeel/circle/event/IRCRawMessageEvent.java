@@ -26,6 +26,7 @@
 package com.github.escortkeel.circle.event;
 
 import com.github.escortkeel.circle.IRCClient;
+import com.github.escortkeel.circle.IRCMessageTags;
 import com.github.escortkeel.circle.IRCUser;
 
 /**
@@ -41,6 +42,14 @@ public class IRCRawMessageEvent extends IRCMessageEvent {
      * <code>IRCRawMessageEvent</code> with the specified parameters.
      */
     public IRCRawMessageEvent(IRCClient client, IRCUser source, String message) {
-        super(client, source, message);
+        this(client, source, message, IRCMessageTags.EMPTY);
+    }
+
+    /**
+     * Constructs a new
+     * <code>IRCRawMessageEvent</code> with the specified parameters.
+     */
+    public IRCRawMessageEvent(IRCClient client, IRCUser source, String message, IRCMessageTags tags) {
+        super(client, source, message, tags);
     }
 }
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle.event;
+
+import com.github.escortkeel.circle.IRCClient;
+
+/**
+ * This class represents an IRC writability changed event, generated by an
+ * <code>IRCClient</code> instance when the bytes waiting to be written rise
+ * above its high watermark, or fall back to its low watermark.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+public class IRCWritabilityChangedEvent extends IRCConnectionEvent {
+
+    private final boolean writable;
+
+    /**
+     * Constructs a new
+     * <code>IRCWritabilityChangedEvent</code> with the specified parameters.
+     */
+    public IRCWritabilityChangedEvent(IRCClient client, boolean writable) {
+        super(client);
+
+        this.writable = writable;
+    }
+
+    /**
+     * Returns whether the client has become writable, rather than
+     * unwritable.
+     *
+     * @return true if the client is now writable.
+     */
+    public boolean isWritable() {
+        return writable;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.util.Collections;
+import junit.framework.TestCase;
+
+/**
+ * Tests the completion of
+ * <code>IRCFuture</code>s and their combination by
+ * <code>allOf()</code>.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+public class IRCFutureTest extends TestCase {
+
+    public void testAllOfCompletesOnceAllComplete() {
+        IRCFuture<String> a = new IRCFuture<>();
+        IRCFuture<Void> b = new IRCFuture<>();
+        IRCFuture<Void> all = IRCFuture.allOf(a, b);
+
+        a.complete("a");
+        assertFalse(all.isDone());
+        b.complete(null);
+        assertTrue(all.isSuccess());
+    }
+
+    public void testAllOfFailsWithFirstFailure() {
+        IRCFuture<String> a = new IRCFuture<>();
+        IRCFuture<String> b = new IRCFuture<>();
+        IRCFuture<String> c = new IRCFuture<>();
+        IRCFuture<Void> all = IRCFuture.allOf(a, b, c);
+
+        IllegalStateException first = new IllegalStateException();
+        b.fail(first);
+        c.cancel(false);
+        assertFalse(all.isDone());
+        a.complete("a");
+        assertSame(first, all.getFailure());
+    }
+
+    public void testAllOfCompletedFutures() {
+        IRCFuture<String> a = new IRCFuture<>();
+        a.complete("a");
+        assertTrue(IRCFuture.allOf(a).isSuccess());
+        assertTrue(IRCFuture.allOf(Collections.<IRCFuture<String>>emptyList()).isSuccess());
+    }
+
+    public void testListenerAddedAfterCompletionIsInvoked() {
+        IRCFuture<String> a = new IRCFuture<>();
+        a.complete("a");
+
+        final boolean[] invoked = new boolean[1];
+        a.addListener(new IRCFuture.Listener<String>() {
+            @Override
+            public void completed(IRCFuture<String> future) {
+                invoked[0] = true;
+            }
+        });
+        assertTrue(invoked[0]);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import junit.framework.TestCase;
+
+/**
+ * Tests the rewriting of queued lines by
+ * <code>IRCOutboundOptimizer</code>.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+public class IRCOutboundOptimizerTest extends TestCase {
+
+    private final IRCKeyTable keys = new IRCKeyTable();
+    private final IRCCodec codec = new IRCCodec(keys);
+    private final Set<IRCKey> joined = new HashSet<>();
+    private final IRCOutboundOptimizer optimizer = new IRCOutboundOptimizer(new IRCOutboundOptimizer.Membership() {
+        @Override
+        public boolean isJoinedOrJoining(IRCKey channel) {
+            return joined.contains(channel);
+        }
+
+        @Override
+        public void joining(IRCKey channel) {
+            joined.add(channel);
+        }
+    }, codec, keys);
+
+    public void testPartThenJoinCyclesChannel() {
+        joined.add(keys.key("#x"));
+        assertEquals(Arrays.asList("PART #x", "JOIN #x"), optimize("PART #x", "JOIN #x"));
+    }
+
+    public void testPartThenJoinOfOtherChannelKeepsOrder() {
+        joined.add(keys.key("#a"));
+        assertEquals(Arrays.asList("PART #a", "JOIN #b"), optimize("PART #a", "JOIN #b"));
+        assertEquals(Arrays.asList("JOIN #b", "PART #a"), optimize("JOIN #b", "PART #a"));
+    }
+
+    public void testPartThenJoinKeepsOtherJoinsBeforeThePart() {
+        joined.add(keys.key("#x"));
+        assertEquals(Arrays.asList("JOIN #a", "PART #x", "JOIN #x,#b"),
+                optimize("JOIN #a", "PART #x", "JOIN #x", "JOIN #b"));
+    }
+
+    public void testJoinThenPartOfChannelNotJoinedIsDropped() {
+        assertEquals(Arrays.<String>asList(), optimize("JOIN #x", "PART #x"));
+    }
+
+    public void testJoinThenPartOfJoinedChannelKeepsPart() {
+        joined.add(keys.key("#x"));
+        assertEquals(Arrays.asList("PART #x"), optimize("JOIN #x", "PART #x"));
+    }
+
+    public void testJoinPartJoinOfChannelNotJoinedJoinsOnce() {
+        assertEquals(Arrays.asList("JOIN #x"), optimize("JOIN #x", "PART #x", "JOIN #x"));
+    }
+
+    public void testPartWithoutQueuedJoinIsKept() {
+        assertEquals(Arrays.asList("PART #y,#z"), optimize("PART #y", "PART #z"));
+    }
+
+    public void testJoinsArePacked() {
+        assertEquals(Arrays.asList("JOIN #a,#b,#c"), optimize("JOIN #a", "JOIN #b,#c", "JOIN #a"));
+    }
+
+    public void testJoinsAreNotMovedAcrossOtherCommands() {
+        assertEquals(Arrays.asList("JOIN #a", "PRIVMSG #a :hi", "JOIN #b"),
+                optimize("JOIN #a", "PRIVMSG #a :hi", "JOIN #b"));
+    }
+
+    public void testJoinWithKeyIsLeftAlone() {
+        assertEquals(Arrays.asList("JOIN #a key", "JOIN #b"), optimize("JOIN #a key", "JOIN #b"));
+    }
+
+    public void testLineWithFutureIsLeftAlone() {
+        ArrayDeque<IRCLine> lines = new ArrayDeque<>();
+        lines.add(line("JOIN #a"));
+        lines.add(new IRCLine("JOIN #b", codec.getCharset(), new IRCFuture<Void>()));
+        lines.add(line("JOIN #c"));
+        optimizer.optimize(lines);
+        assertEquals(Arrays.asList("JOIN #a", "JOIN #b", "JOIN #c"), raw(lines));
+    }
+
+    public void testConsecutiveNicksAreCollapsed() {
+        assertEquals(Arrays.asList("NICK c"), optimize("NICK a", "NICK b", "NICK c"));
+    }
+
+    public void testNicksAreNotCollapsedAcrossOtherCommands() {
+        assertEquals(Arrays.asList("NICK a", "PRIVMSG #x :hi", "NICK b"),
+                optimize("NICK a", "PRIVMSG #x :hi", "NICK b"));
+        assertEquals(Arrays.asList("NICK a", "JOIN #x", "NICK b"),
+                optimize("NICK a", "JOIN #x", "NICK b"));
+    }
+
+    public void testPackedLineFillsMaximumLength() {
+        // "JOIN " and nine 50 byte channels with their commas leave 46 bytes.
+        List<String> lines = new ArrayList<>();
+        StringBuilder expected = new StringBuilder("JOIN ");
+        for (int i = 0; i < 9; i++) {
+            String channel = channel(i, 50);
+            lines.add("JOIN " + channel);
+            expected.append(channel).append(',');
+        }
+        lines.add("JOIN " + channel(9, 46));
+        expected.append(channel(9, 46));
+
+        assertEquals(IRCLine.MAX_LENGTH, expected.length());
+        assertEquals(Arrays.asList(expected.toString()), optimize(lines.toArray(new String[lines.size()])));
+    }
+
+    public void testPackedLineSplitsBeyondMaximumLength() {
+        List<String> lines = new ArrayList<>();
+        StringBuilder first = new StringBuilder("JOIN ");
+        for (int i = 0; i < 9; i++) {
+            String channel = channel(i, 50);
+            lines.add("JOIN " + channel);
+            first.append(i == 0 ? "" : ",").append(channel);
+        }
+        lines.add("JOIN " + channel(9, 47));
+
+        assertEquals(Arrays.asList(first.toString(), "JOIN " + channel(9, 47)),
+                optimize(lines.toArray(new String[lines.size()])));
+    }
+
+    private List<String> optimize(String... raws) {
+        ArrayDeque<IRCLine> lines = new ArrayDeque<>();
+        for (String raw : raws) {
+            lines.add(line(raw));
+        }
+        optimizer.optimize(lines);
+        return raw(lines);
+    }
+
+    private IRCLine line(String raw) {
+        return new IRCLine(raw, codec.getCharset());
+    }
+
+    private static List<String> raw(ArrayDeque<IRCLine> lines) {
+        List<String> raws = new ArrayList<>();
+        for (IRCLine line : lines) {
+            raws.add(line.getRaw());
+        }
+        return raws;
+    }
+
+    /**
+     * Returns a distinct channel name of the specified length.
+     */
+    private static String channel(int index, int length) {
+        StringBuilder sb = new StringBuilder("#").append(index);
+        while (sb.length() < length) {
+            sb.append('x');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ * Tests the splitting of message text by
+ * <code>IRCTextSplitter</code>.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+public class IRCTextSplitterTest extends TestCase {
+
+    private static final Charset UTF_8 = IRCCodec.UTF_8;
+
+    public void testAsciiBreaksAtLastSpace() {
+        assertEquals(Arrays.asList("aaa bbb", "ccc"), IRCTextSplitter.split("aaa bbb ccc", 8, UTF_8));
+    }
+
+    public void testAsciiFillsChunkExactly() {
+        assertEquals(Arrays.asList("aaaaaaaa", "bb"), IRCTextSplitter.split("aaaaaaaabb", 8, UTF_8));
+    }
+
+    public void testMultiByteIsNotSplit() {
+        // Each character is three bytes, so only two fit in eight bytes.
+        List<String> chunks = IRCTextSplitter.split("\u4f60\u4f60\u4f60\u4f60\u4f60", 8, UTF_8);
+        assertEquals(Arrays.asList("\u4f60\u4f60", "\u4f60\u4f60", "\u4f60"), chunks);
+        assertFits(chunks, 8);
+    }
+
+    public void testWordAfterSpaceWhichStillDoesNotFit() {
+        StringBuilder text = new StringBuilder("a ");
+        for (int i = 0; i < 134; i++) {
+            text.append('\u4f60');
+        }
+
+        List<String> chunks = IRCTextSplitter.split(text.toString(), 398, UTF_8);
+        assertFits(chunks, 398);
+        assertEquals(text.toString(), "a " + join(chunks.subList(1, chunks.size())));
+    }
+
+    public void testSurrogatePairIsNotSplit() {
+        String clef = "\ud834\udd1e";
+        List<String> chunks = IRCTextSplitter.split("ab" + clef + clef, 5, UTF_8);
+        assertEquals(Arrays.asList("ab", clef, clef), chunks);
+        assertFits(chunks, 5);
+    }
+
+    public void testSurrogatePairAfterSpaceAtBoundary() {
+        String clef = "\ud834\udd1e";
+        List<String> chunks = IRCTextSplitter.split("a " + clef + clef, 7, UTF_8);
+        assertFits(chunks, 7);
+        assertEquals(Arrays.asList("a", clef, clef), chunks);
+    }
+
+    public void testLineBreaksStartNewChunks() {
+        assertEquals(Arrays.asList("one", "two"), IRCTextSplitter.split("one\r\n\ntwo", 8, UTF_8));
+    }
+
+    private static void assertFits(List<String> chunks, int maxBytes) {
+        for (String chunk : chunks) {
+            assertTrue(chunk, chunk.getBytes(UTF_8).length <= maxBytes);
+            assertFalse(chunk, Character.isLowSurrogate(chunk.charAt(0)));
+            assertFalse(chunk, Character.isHighSurrogate(chunk.charAt(chunk.length() - 1)));
+        }
+    }
+
+    private static String join(List<String> chunks) {
+        StringBuilder joined = new StringBuilder();
+        for (String chunk : chunks) {
+            joined.append(chunk);
+        }
+        return joined.toString();
+    }
+}
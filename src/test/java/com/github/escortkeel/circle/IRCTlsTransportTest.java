@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2013, Keeley Hoek (escortkeel@live.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.escortkeel.circle;
+
+import com.github.escortkeel.circle.event.IRCWelcomeEvent;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+import junit.framework.TestCase;
+
+/**
+ * Tests
+ * <code>IRCTlsTransport</code> against an in-process TLS server, whose
+ * self-signed certificate is generated with <tt>keytool</tt> and pinned by
+ * the client.
+ *
+ * @author Keeley Hoek (escortkeel@live.com)
+ */
+public class IRCTlsTransportTest extends TestCase {
+
+    private static final char[] PASSWORD = "changeit".toCharArray();
+    private static SSLContext serverContext;
+    private static SSLContext clientContext;
+    private SSLServerSocket server;
+
+    @Override
+    protected void setUp() throws Exception {
+        if (serverContext == null) {
+            createContexts();
+        }
+        server = (SSLServerSocket) serverContext.getServerSocketFactory().createServerSocket(0);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.close();
+    }
+
+    public void testClientConnectsSecurely() throws Exception {
+        final CountDownLatch welcomed = new CountDownLatch(1);
+        IRCClient client = new IRCClient("bot", new IRCAdapter() {
+            @Override
+            public void onWelcome(IRCWelcomeEvent event) {
+                welcomed.countDown();
+            }
+        });
+        client.setFloodControl(IRCFloodControl.NONE);
+        client.setSSLContext(clientContext);
+
+        try {
+            client.connectSecurely("localhost", server.getLocalPort());
+            SSLSocket socket = (SSLSocket) server.accept();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), IRCCodec.UTF_8));
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), IRCCodec.UTF_8);
+
+            String line;
+            while ((line = in.readLine()) != null && !line.startsWith("NICK ")) {
+            }
+            assertEquals("NICK bot", line);
+            out.write(":srv 001 bot :Welcome\r\nPING :check\r\n");
+            out.flush();
+
+            assertTrue(welcomed.await(10, TimeUnit.SECONDS));
+            assertTrue(client.isSecure());
+            assertEquals("PONG :check", in.readLine());
+            socket.close();
+        } finally {
+            client.close();
+        }
+    }
+
+    public void testMultiRecordReadAndWrite() throws Exception {
+        Thread echo = new Thread() {
+            @Override
+            public void run() {
+                try (SSLSocket socket = (SSLSocket) server.accept()) {
+                    InputStream in = socket.getInputStream();
+                    OutputStream out = socket.getOutputStream();
+                    // Small writes, so that the reply spans many records.
+                    byte[] buf = new byte[1000];
+                    int n;
+                    while ((n = in.read(buf)) != -1) {
+                        out.write(buf, 0, n);
+                        out.flush();
+                    }
+                } catch (IOException ex) {
+                }
+            }
+        };
+        echo.start();
+
+        IRCTlsTransport transport = connect();
+        try {
+            byte[] sent = new byte[100 * 1024];
+            for (int i = 0; i < sent.length; i++) {
+                sent[i] = (byte) ('a' + i % 26);
+            }
+
+            // Two source buffers, each larger than a record.
+            ByteBuffer[] srcs = {ByteBuffer.wrap(sent, 0, sent.length / 2), ByteBuffer.wrap(sent, sent.length / 2, sent.length - sent.length / 2)};
+            ByteBuffer received = ByteBuffer.allocate(sent.length);
+            while (srcs[1].hasRemaining()) {
+                Handler<Long> written = new Handler<>();
+                transport.write(srcs, 0, srcs.length, written);
+                assertTrue(written.get() > 0);
+            }
+
+            ByteBuffer dst = ByteBuffer.allocate(4096);
+            while (received.hasRemaining()) {
+                Handler<Integer> read = new Handler<>();
+                dst.clear();
+                transport.read(dst, read);
+                int n = read.get();
+                assertTrue(n > 0);
+                dst.flip();
+                received.put(dst);
+            }
+            assertTrue(Arrays.equals(sent, received.array()));
+        } finally {
+            transport.close();
+        }
+        echo.join(10000);
+    }
+
+    public void testCloseReleasesBuffersOnce() throws Exception {
+        Thread silent = new Thread() {
+            @Override
+            public void run() {
+                try (SSLSocket socket = (SSLSocket) server.accept()) {
+                    socket.startHandshake();
+                    socket.getInputStream().read();
+                } catch (IOException ex) {
+                }
+            }
+        };
+        silent.start();
+
+        IRCTlsTransport transport = connect();
+        ByteBuffer netIn = buffer(transport, "netIn");
+        ByteBuffer netOut = buffer(transport, "netOut");
+        ByteBuffer appIn = buffer(transport, "appIn");
+        Handler<Integer> read = new Handler<>();
+        transport.read(ByteBuffer.allocate(512), read);
+
+        // The read still holds the buffers, so closing must not release them.
+        transport.close();
+        try {
+            read.get();
+            fail("Read completed after close");
+        } catch (ExecutionException ex) {
+        }
+        transport.close();
+
+        // The last operation to finish releases the buffers, which may be just
+        // after the failure of the read has been reported.
+        int netInFound = 0;
+        int netOutFound = 0;
+        int appInFound = 0;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while ((netInFound == 0 || netOutFound == 0 || appInFound == 0) && System.nanoTime() < deadline) {
+            netInFound += drain(IRCBufferPool.DIRECT, netIn);
+            netOutFound += drain(IRCBufferPool.DIRECT, netOut);
+            appInFound += drain(IRCBufferPool.HEAP, appIn);
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        assertEquals(1, netInFound + drain(IRCBufferPool.DIRECT, netIn));
+        assertEquals(1, netOutFound + drain(IRCBufferPool.DIRECT, netOut));
+        assertEquals(1, appInFound + drain(IRCBufferPool.HEAP, appIn));
+        silent.join(10000);
+    }
+
+    private IRCTlsTransport connect() throws Exception {
+        SSLEngine engine = clientContext.createSSLEngine("localhost", server.getLocalPort());
+        engine.setUseClientMode(true);
+
+        AsynchronousSocketChannel channel = AsynchronousSocketChannel.open();
+        channel.connect(new InetSocketAddress("localhost", server.getLocalPort())).get(10, TimeUnit.SECONDS);
+
+        IRCTlsTransport transport = new IRCTlsTransport(channel, engine);
+        Handler<Void> handshake = new Handler<>();
+        transport.handshake(handshake);
+        handshake.get();
+        return transport;
+    }
+
+    private static ByteBuffer buffer(IRCTlsTransport transport, String name) throws Exception {
+        Field field = IRCTlsTransport.class.getDeclaredField(name);
+        field.setAccessible(true);
+        return (ByteBuffer) field.get(transport);
+    }
+
+    /**
+     * Takes every buffer with the capacity of the specified buffer out of the
+     * pool, returning the number of times the buffer itself was taken. Other
+     * connections may have returned buffers of the same capacity, so only
+     * the buffer itself is counted.
+     */
+    private static int drain(IRCBufferPool pool, ByteBuffer buffer) {
+        int found = 0;
+        while (pool.getPooledCount(buffer.capacity()) > 0) {
+            if (pool.acquire(buffer.capacity()) == buffer) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Creates a keystore holding a self-signed certificate for
+     * <tt>localhost</tt>, the server context which presents it and the client
+     * context which trusts only it.
+     */
+    private static void createContexts() throws Exception {
+        File file = File.createTempFile("circle", ".p12");
+        file.delete();
+        file.deleteOnExit();
+
+        String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+        Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "server", "-keyalg", "RSA",
+                "-keysize", "2048", "-dname", "CN=localhost", "-ext", "SAN=dns:localhost,ip:127.0.0.1",
+                "-validity", "1", "-storetype", "PKCS12", "-keystore", file.getPath(),
+                "-storepass", new String(PASSWORD), "-keypass", new String(PASSWORD))
+                .redirectErrorStream(true).start();
+        InputStream output = process.getInputStream();
+        while (output.read() != -1) {
+        }
+        assertEquals(0, process.waitFor());
+
+        KeyStore store = KeyStore.getInstance("PKCS12");
+        try (InputStream in = new FileInputStream(file)) {
+            store.load(in, PASSWORD);
+        }
+
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(store, PASSWORD);
+        serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(kmf.getKeyManagers(), null, null);
+
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(store);
+        clientContext = SSLContext.getInstance("TLS");
+        clientContext.init(null, tmf.getTrustManagers(), null);
+    }
+
+    /**
+     * This class waits for the result of an operation of a transport.
+     */
+    private static final class Handler<V> implements CompletionHandler<V, Void> {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        private V result;
+        private Throwable failure;
+
+        @Override
+        public void completed(V result, Void attachment) {
+            this.result = result;
+            done.countDown();
+        }
+
+        @Override
+        public void failed(Throwable exc, Void attachment) {
+            this.failure = exc;
+            done.countDown();
+        }
+
+        V get() throws InterruptedException, ExecutionException, TimeoutException {
+            if (!done.await(10, TimeUnit.SECONDS)) {
+                throw new TimeoutException();
+            }
+            if (failure != null) {
+                throw new ExecutionException(failure);
+            }
+            return result;
+        }
+    }
+}